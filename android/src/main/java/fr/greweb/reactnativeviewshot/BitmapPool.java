@@ -0,0 +1,220 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Pool of screenshot bitmaps keyed by size and config. Idle bitmaps are kept in a
+ * {@link StripedLruPool}, so parallel captures do not contend on a single lock and bitmaps are
+ * recycled in least recently released order once they exceed the byte budget. On a size miss a
+ * bigger idle bitmap is reused through {@link Bitmap#reconfigure(int, int, Bitmap.Config)}.
+ */
+public class BitmapPool {
+    //region Constants
+    private static final String TAG = BitmapPool.class.getSimpleName();
+    /**
+     * Default amount of bytes retained by idle bitmaps, about three full HD screenshots.
+     */
+    public static final long DEFAULT_BYTE_BUDGET = 32L * 1024 * 1024;
+    /**
+     * A bitmap is reconfigured only when it is at most that many times bigger than needed, so
+     * huge allocations are not pinned by small captures.
+     */
+    private static final int RECONFIGURE_MAX_WASTE = 2;
+    //endregion
+
+    //region Class members
+    private final StripedLruPool<Key, Bitmap> idle;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong reconfigured = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    //endregion
+
+    //region Constructors
+    public BitmapPool() {
+        this(DEFAULT_BYTE_BUDGET);
+    }
+
+    /**
+     * @param byteBudget maximum amount of bytes retained by idle bitmaps
+     */
+    public BitmapPool(final long byteBudget) {
+        this.idle = new StripedLruPool<>(byteBudget, new StripedLruPool.Evictor<Bitmap>() {
+            @Override
+            public void evict(@NonNull final Bitmap bitmap) {
+                bitmap.recycle();
+            }
+        });
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Get a cleared bitmap of exactly the given size and config, reusing an idle one if possible.
+     */
+    @NonNull
+    public Bitmap get(final int width, final int height, @NonNull final Bitmap.Config config) {
+        return get(width, height, config, null);
+    }
+
+    /**
+     * @param metrics capture accounted for the bitmap and whether it was reused
+     * @see #get(int, int, Bitmap.Config)
+     */
+    @NonNull
+    public Bitmap get(final int width, final int height, @NonNull final Bitmap.Config config, @Nullable final CaptureMetrics metrics) {
+        final Key key = new Key(width, height, config);
+
+        Bitmap bitmap = idle.take(key);
+        if (bitmap != null) {
+            hits.incrementAndGet();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            bitmap = takeReconfigurable(key);
+        }
+
+        if (bitmap == null) {
+            misses.incrementAndGet();
+            bitmap = Bitmap.createBitmap(width, height, config);
+            if (metrics != null) {
+                metrics.recordBitmap(sizeOf(bitmap), false);
+            }
+            return bitmap;
+        }
+
+        if (metrics != null) {
+            metrics.recordBitmap(sizeOf(bitmap), true);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Return bitmap to the pool of available ones. The caller must not use it anymore.
+     */
+    public void put(@Nullable final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == null) return;
+
+        final int bytes = sizeOf(bitmap);
+        if (bytes > idle.getByteBudget()) {
+            bitmap.recycle();
+            return;
+        }
+
+        idle.offer(new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig()), bitmap, bytes);
+    }
+
+    /**
+     * Evict all idle bitmaps.
+     */
+    public void clear() {
+        idle.clear();
+    }
+
+    public long getRetainedBytes() {
+        return idle.getRetainedBytes();
+    }
+
+    /**
+     * Requests served with an idle bitmap of the exact size.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Requests served by reconfiguring a bigger idle bitmap.
+     */
+    public long getReconfiguredCount() {
+        return reconfigured.get();
+    }
+
+    /**
+     * Requests that had to allocate a new bitmap.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return idle.getEvictionCount();
+    }
+    //endregion
+
+    //region Implementation
+    private static int sizeOf(@NonNull final Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? bitmap.getAllocationByteCount()
+                : bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(@NonNull final Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * Find the smallest idle bitmap big enough to hold the requested one and reconfigure it.
+     */
+    @Nullable
+    private Bitmap takeReconfigurable(@NonNull final Key key) {
+        final long required = (long) key.width * key.height * bytesPerPixel(key.config);
+        final Bitmap bitmap = idle.takeBestFit(required, required * RECONFIGURE_MAX_WASTE);
+        if (bitmap == null) return null;
+
+        try {
+            bitmap.reconfigure(key.width, key.height, key.config);
+            reconfigured.incrementAndGet();
+            return bitmap;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to reconfigure pooled bitmap: " + e.getMessage());
+            bitmap.recycle();
+            return null;
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+
+        private Key(final int width, final int height, @NonNull final Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            final Key key = (Key) o;
+            return width == key.width && height == key.height && config == key.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * width + height) + config.hashCode();
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,207 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.util.Log;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.uimanager.NativeViewHierarchyManager;
+import com.facebook.react.uimanager.UIBlock;
+
+/**
+ * Capture of many views resolved in a single UI block. Captures are fed to the scheduler as
+ * workers free up, so the batch never overflows its queue and consecutive captures reuse the
+ * pooled bitmaps and buffers released by the previous ones. The promise resolves with the
+ * results in the order of the tags, or rejects with the first failure once every capture
+ * settled; the results of the successful captures are released in that case.
+ */
+public class CaptureBatch implements UIBlock {
+    //region Constants
+    private static final String TAG = CaptureBatch.class.getSimpleName();
+    //endregion
+
+    //region Class members
+    private final int[] tags;
+    private final int maxInFlight;
+    private final Factory factory;
+    private final Promise promise;
+    private final ViewShot[] captures;
+    private final View[] views;
+    /**
+     * Result strings, or maps when hashes were requested.
+     */
+    private final Object[] results;
+
+    private int next;
+    private int settled;
+    private String errorCode;
+    private String errorMessage;
+    //endregion
+
+    //region Constructors
+    /**
+     * @param tags        react tags of the captured views
+     * @param maxInFlight amount of captures scheduled at the same time
+     * @param factory     creates the capture of each view
+     * @param promise     resolved with the array of results
+     */
+    public CaptureBatch(@NonNull final int[] tags, final int maxInFlight, @NonNull final Factory factory, @NonNull final Promise promise) throws Exception {
+        this.tags = tags;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.factory = factory;
+        this.promise = promise;
+        this.captures = new ViewShot[tags.length];
+        this.views = new View[tags.length];
+        this.results = new Object[tags.length];
+
+        for (int i = 0; i < tags.length; i++) {
+            captures[i] = factory.create(tags[i], i, createPromise(i));
+        }
+    }
+    //endregion
+
+    //region Overrides
+    @Override
+    public void execute(final NativeViewHierarchyManager nativeViewHierarchyManager) {
+        if (tags.length == 0) {
+            promise.resolve(Arguments.createArray());
+            return;
+        }
+
+        // all views are taken from the same UI state
+        for (int i = 0; i < tags.length; i++) {
+            try {
+                views[i] = nativeViewHierarchyManager.resolveView(tags[i]);
+            } catch (final Throwable ex) {
+                Log.w(TAG, "No view found with reactTag: " + tags[i], ex);
+            }
+        }
+
+        for (int i = 0, count = Math.min(maxInFlight, tags.length); i < count; i++) {
+            startNext();
+        }
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Schedule the next pending capture, views that could not be resolved fail right away.
+     */
+    private void startNext() {
+        while (true) {
+            final int index;
+            synchronized (this) {
+                if (next >= tags.length) return;
+                index = next++;
+            }
+
+            if (views[index] != null) {
+                captures[index].execute(views[index]);
+                return;
+            }
+
+            if (settle(index, null, ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "No view found with reactTag: " + tags[index])) {
+                finish();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Record the outcome of a capture.
+     *
+     * @return true when it was the last capture of the batch
+     */
+    private synchronized boolean settle(final int index, final Object result, final String code, final String message) {
+        results[index] = result;
+        if (result == null && errorCode == null) {
+            errorCode = code;
+            errorMessage = message;
+        }
+        return ++settled == tags.length;
+    }
+
+    private void onSettled(final int index, final Object result, final String code, final String message) {
+        if (settle(index, result, code, message)) {
+            finish();
+        } else {
+            startNext();
+        }
+    }
+
+    private void finish() {
+        final String code;
+        final String message;
+        synchronized (this) {
+            code = errorCode;
+            message = errorMessage;
+        }
+
+        if (code == null) {
+            final WritableArray array = Arguments.createArray();
+            for (final Object result : results) {
+                if (result instanceof ReadableMap) {
+                    array.pushMap((ReadableMap) result);
+                } else {
+                    array.pushString(result.toString());
+                }
+            }
+            promise.resolve(array);
+            return;
+        }
+
+        // all or nothing, nobody would release the files and blobs of a rejected batch
+        for (final Object result : results) {
+            if (result != null) {
+                factory.release(result);
+            }
+        }
+        promise.reject(code, message);
+    }
+
+    @NonNull
+    private Promise createPromise(final int index) {
+        return new PromiseImpl(new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                final Object result = args.length > 0 ? args[0] : null;
+                if (result == null) {
+                    onSettled(index, null, ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Capture of view tag " + tags[index] + " has no result");
+                } else {
+                    onSettled(index, result instanceof ReadableMap ? result : result.toString(), null, null);
+                }
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                // rejections are passed as an error map
+                final ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap) args[0] : null;
+                final String code = error != null && error.hasKey("code") ? error.getString("code") : ViewShot.ERROR_UNABLE_TO_SNAPSHOT;
+                final String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+                onSettled(index, null, code, message);
+            }
+        });
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Creates the capture of one view of the batch.
+     */
+    public interface Factory {
+        @NonNull
+        ViewShot create(int tag, int index, @NonNull Promise promise) throws Exception;
+
+        /**
+         * Release the result of a capture of a rejected batch, a string or a map.
+         */
+        void release(@NonNull Object result);
+    }
+    //endregion
+}
@@ -0,0 +1,150 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * Joins identical capture requests made before the first of them runs, so the view is rendered
+ * and encoded once and the result given to every request.
+ * <p>
+ * A request opens a group under its key, identical requests join it until the group is closed,
+ * which the capture does when it resolves its view. Each joined request gets its own share of
+ * the result, see {@link Sharer}.
+ */
+public class CaptureCoalescer {
+    //region Class members
+    /**
+     * Groups open to identical requests by key.
+     */
+    private final Map<String, Group> groups = new HashMap<>();
+    private final Sharer sharer;
+
+    private long coalesced;
+    //endregion
+
+    //region Constructors
+    public CaptureCoalescer(@NonNull final Sharer sharer) {
+        this.sharer = sharer;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Join the identical request in flight, or open a group for it.
+     *
+     * @param key identifies identical requests, see {@link CaptureResultCache#optionsKey(ReadableMap)}
+     * @return the group to capture into, null when the request joined another one
+     */
+    @Nullable
+    public synchronized Group join(@NonNull final String key, @NonNull final Promise promise) {
+        final Group open = groups.get(key);
+        if (open != null) {
+            open.waiters.add(promise);
+            coalesced++;
+            return null;
+        }
+
+        final Group group = new Group(key, promise);
+        groups.put(key, group);
+        return group;
+    }
+
+    /**
+     * Requests given the result of another one.
+     */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Gives the result of a capture to one more request. Released by each request on its own,
+     * resources behind the result are retained once more for it.
+     */
+    public interface Sharer {
+        /**
+         * @return result for another request, resolved as is
+         */
+        @Nullable
+        Object share(@Nullable Object result);
+    }
+
+    /**
+     * Requests waiting for one capture.
+     */
+    public final class Group {
+        private final String key;
+        private final List<Promise> waiters = new ArrayList<>();
+
+        private Group(@NonNull final String key, @NonNull final Promise promise) {
+            this.key = key;
+            this.waiters.add(promise);
+        }
+
+        /**
+         * Stop joining requests, the ones made later may see another render of the view.
+         */
+        public void close() {
+            synchronized (CaptureCoalescer.this) {
+                if (groups.get(key) == this) {
+                    groups.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Promise settling every request of the group, to give to the capture.
+         */
+        @NonNull
+        public Promise promise() {
+            return new PromiseImpl(new Callback() {
+                @Override
+                public void invoke(final Object... args) {
+                    final Object result = args.length > 0 ? args[0] : null;
+                    final List<Promise> all = settle();
+                    // shared before resolving, maps are consumed by the bridge
+                    final Object[] results = new Object[all.size()];
+                    results[0] = result;
+                    for (int i = 1; i < results.length; i++) {
+                        results[i] = sharer.share(result);
+                    }
+                    for (int i = 0; i < results.length; i++) {
+                        all.get(i).resolve(results[i]);
+                    }
+                }
+            }, new Callback() {
+                @Override
+                public void invoke(final Object... args) {
+                    // rejections are passed as an error map
+                    final ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap) args[0] : null;
+                    final String code = error != null && error.hasKey("code") ? error.getString("code") : ViewShot.ERROR_UNABLE_TO_SNAPSHOT;
+                    final String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+                    for (final Promise waiter : settle()) {
+                        waiter.reject(code, message);
+                    }
+                }
+            });
+        }
+
+        @NonNull
+        private List<Promise> settle() {
+            close();
+            synchronized (CaptureCoalescer.this) {
+                return new ArrayList<>(waiters);
+            }
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,144 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+/**
+ * Serves the {@code memory} results of {@link RNViewShotModule} as {@code content://} URIs, so
+ * the Image component and anything reading through the ContentResolver load them from memory.
+ * Deleting a URI releases the capture.
+ */
+public class CaptureContentProvider extends ContentProvider implements ContentProvider.PipeDataWriter<byte[]> {
+    //region Constants
+    private static final String TAG = CaptureContentProvider.class.getSimpleName();
+    /**
+     * Appended to the application id to form the authority, see the library manifest.
+     */
+    public static final String AUTHORITY_SUFFIX = ".viewshot";
+    //endregion
+
+    //region Public API
+    /**
+     * Start of the URIs of the captures, followed by their key.
+     */
+    @NonNull
+    public static String uriPrefix(@NonNull final String packageName) {
+        return "content://" + packageName + AUTHORITY_SUFFIX + "/";
+    }
+    //endregion
+
+    //region Overrides
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull final Uri uri) {
+        final CaptureMemoryStore.Entry entry = entryOf(uri);
+        return entry != null ? entry.type : null;
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull final Uri uri, @NonNull final String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Captures are read only: " + uri);
+        }
+
+        final CaptureMemoryStore.Entry entry = entryOf(uri);
+        if (entry == null) {
+            throw new FileNotFoundException("Capture was released: " + uri);
+        }
+        return openPipeHelper(uri, entry.type, null, entry.data, this);
+    }
+
+    @Override
+    public void writeDataToPipe(@NonNull final ParcelFileDescriptor output, @NonNull final Uri uri, @NonNull final String mimeType,
+                                @Nullable final Bundle opts, @Nullable final byte[] data) {
+        final FileOutputStream os = new FileOutputStream(output.getFileDescriptor());
+        try {
+            if (data != null) {
+                os.write(data);
+            }
+        } catch (final IOException e) {
+            // the reader went away
+            Log.w(TAG, "Failed to serve capture: " + e.getMessage());
+        } finally {
+            try {
+                os.close();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Name and size of a capture, as for any openable document.
+     */
+    @Nullable
+    @Override
+    public Cursor query(@NonNull final Uri uri, @Nullable final String[] projection, @Nullable final String selection,
+                        @Nullable final String[] selectionArgs, @Nullable final String sortOrder) {
+        final CaptureMemoryStore.Entry entry = entryOf(uri);
+        if (entry == null) return null;
+
+        final String[] columns = projection != null
+                ? projection
+                : new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        final Object[] row = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(columns[i])) {
+                row[i] = uri.getLastPathSegment();
+            } else if (OpenableColumns.SIZE.equals(columns[i])) {
+                row[i] = entry.data.length;
+            }
+        }
+
+        final MatrixCursor cursor = new MatrixCursor(columns, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull final Uri uri, @Nullable final ContentValues values) {
+        throw new UnsupportedOperationException("Captures are read only");
+    }
+
+    @Override
+    public int delete(@NonNull final Uri uri, @Nullable final String selection, @Nullable final String[] selectionArgs) {
+        final String key = uri.getLastPathSegment();
+        return key != null && RNViewShotModule.getMemoryStore().release(key) ? 1 : 0;
+    }
+
+    @Override
+    public int update(@NonNull final Uri uri, @Nullable final ContentValues values, @Nullable final String selection,
+                      @Nullable final String[] selectionArgs) {
+        throw new UnsupportedOperationException("Captures are read only");
+    }
+    //endregion
+
+    //region Implementation
+    @Nullable
+    private static CaptureMemoryStore.Entry entryOf(@NonNull final Uri uri) {
+        final String key = uri.getLastPathSegment();
+        return key != null ? RNViewShotModule.getMemoryStore().get(key) : null;
+    }
+    //endregion
+}
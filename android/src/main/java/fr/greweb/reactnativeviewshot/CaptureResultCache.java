@@ -0,0 +1,378 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.net.Uri;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.UiThreadUtil;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Results of previous captures, given back as long as the captured view was not invalidated.
+ * <p>
+ * Each cached view carries a render generation, bumped when its subtree is drawn dirty, laid out
+ * or attached to a window. A result is only valid for the generation it was captured at, and a
+ * view with an invalidation or layout still pending never hits. Results are evicted least
+ * recently used first, above an amount of entries or of result bytes.
+ */
+public class CaptureResultCache {
+    //region Constants
+    /**
+     * Default amount of results retained.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+    /**
+     * Default size of the results retained, strings count for 2 bytes per char.
+     */
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    //endregion
+
+    //region Class members
+    /**
+     * Results by tag and options, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Generations by react tag, least recently used first.
+     */
+    private final LinkedHashMap<Integer, Generation> generations = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private long bytes;
+    private long hits;
+    private long misses;
+    //endregion
+
+    //region Constructors
+    public CaptureResultCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxEntries maximum amount of results retained
+     * @param maxBytes   maximum size of the results retained
+     */
+    public CaptureResultCache(final int maxEntries, final long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Cache key part of the capture options, independent of their order.
+     */
+    @NonNull
+    public static String optionsKey(@NonNull final ReadableMap options) {
+        return new TreeMap<>(options.toHashMap()).toString();
+    }
+
+    /**
+     * Look the result of a capture up, must be called on the UI thread.
+     *
+     * @param options key of the capture options, see {@link #optionsKey(ReadableMap)}
+     */
+    @NonNull
+    public Lookup lookup(final int tag, @NonNull final View view, @NonNull final String options) {
+        final String key = tag + "|" + options;
+        final Generation generation = obtainGeneration(tag, view);
+        // drawn or laid out on the next frame, the generation does not know yet
+        final boolean pending = view.isDirty() || view.isLayoutRequested();
+
+        String result = null;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!pending && entry.generation == generation && entry.value == generation.value && exists(entry.result)) {
+                    result = entry.result;
+                } else {
+                    remove(key);
+                }
+            }
+
+            if (result != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+
+        return new Lookup(key, generation, generation.value, result);
+    }
+
+    /**
+     * Forget a released result.
+     */
+    public synchronized void release(@NonNull final String result) {
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            final Entry entry = it.next();
+            if (entry.result.equals(result)) {
+                bytes -= entry.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget all results and stop tracking the views.
+     */
+    public void clear() {
+        final Generation[] all;
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+            all = generations.values().toArray(new Generation[0]);
+            generations.clear();
+        }
+
+        for (final Generation generation : all) {
+            generation.detach();
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    //endregion
+
+    //region Implementation
+    @NonNull
+    private Generation obtainGeneration(final int tag, @NonNull final View view) {
+        final Generation generation;
+        final Generation replaced;
+        synchronized (this) {
+            final Generation existing = generations.get(tag);
+            if (existing != null && existing.view.get() == view) {
+                return existing;
+            }
+
+            // tags are reused across reloads, never trust the generation of another view
+            generation = new Generation(view);
+            replaced = generations.put(tag, generation);
+        }
+
+        if (replaced != null) {
+            replaced.detach();
+        }
+        generation.attach();
+        trimGenerations();
+        return generation;
+    }
+
+    private synchronized void put(@NonNull final String key, @NonNull final Generation generation, final long value, @NonNull final String result) {
+        final long size = 2L * result.length();
+        if (size > maxBytes) return;
+
+        remove(key);
+        entries.put(key, new Entry(generation, value, result, size));
+        bytes += size;
+
+        final Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || bytes > maxBytes)) {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Must be called while holding the cache monitor.
+     */
+    private void remove(@NonNull final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            bytes -= entry.bytes;
+        }
+    }
+
+    private void trimGenerations() {
+        while (true) {
+            final Generation eldest;
+            synchronized (this) {
+                if (generations.size() <= maxEntries) return;
+
+                final Iterator<Generation> it = generations.values().iterator();
+                eldest = it.next();
+                it.remove();
+            }
+            eldest.detach();
+        }
+    }
+
+    /**
+     * Temp files may be deleted behind our back.
+     */
+    private static boolean exists(@NonNull final String result) {
+        if (!result.startsWith("file:")) return true;
+
+        final String path = Uri.parse(result).getPath();
+        return path != null && new File(path).exists();
+    }
+
+    private static final class Entry {
+        final Generation generation;
+        final long value;
+        final String result;
+        final long bytes;
+
+        Entry(final Generation generation, final long value, final String result, final long bytes) {
+            this.generation = generation;
+            this.value = value;
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Render generation of a view, only changed on the UI thread.
+     */
+    private static final class Generation implements ViewTreeObserver.OnPreDrawListener, View.OnLayoutChangeListener, View.OnAttachStateChangeListener {
+        final WeakReference<View> view;
+        volatile long value;
+
+        Generation(@NonNull final View view) {
+            this.view = new WeakReference<>(view);
+        }
+
+        @Override
+        public boolean onPreDraw() {
+            final View root = view.get();
+            // a clean root has no dirty descendants
+            if (root != null && root.isDirty()) {
+                value++;
+            }
+            return true;
+        }
+
+        @Override
+        public void onLayoutChange(final View v, final int left, final int top, final int right, final int bottom,
+                                   final int oldLeft, final int oldTop, final int oldRight, final int oldBottom) {
+            value++;
+        }
+
+        @Override
+        public void onViewAttachedToWindow(final View v) {
+            value++;
+            v.getViewTreeObserver().addOnPreDrawListener(this);
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(final View v) {
+            value++;
+            removePreDrawListener(v);
+        }
+
+        void attach() {
+            final View root = view.get();
+            if (root == null) return;
+
+            root.addOnLayoutChangeListener(this);
+            root.addOnAttachStateChangeListener(this);
+            // isAttachedToWindow() needs API 19
+            if (root.getWindowToken() != null) {
+                root.getViewTreeObserver().addOnPreDrawListener(this);
+            }
+        }
+
+        void detach() {
+            UiThreadUtil.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    value++;
+
+                    final View root = view.get();
+                    if (root == null) return;
+
+                    root.removeOnLayoutChangeListener(Generation.this);
+                    root.removeOnAttachStateChangeListener(Generation.this);
+                    removePreDrawListener(root);
+                }
+            });
+        }
+
+        private void removePreDrawListener(@NonNull final View root) {
+            final ViewTreeObserver observer = root.getViewTreeObserver();
+            if (observer.isAlive()) {
+                observer.removeOnPreDrawListener(this);
+            }
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Outcome of a {@link #lookup(int, View, String)}.
+     */
+    public final class Lookup {
+        private final String key;
+        private final Generation generation;
+        private final long value;
+        /**
+         * Cached result, null on a miss.
+         */
+        @Nullable
+        public final String result;
+
+        private Lookup(final String key, final Generation generation, final long value, @Nullable final String result) {
+            this.key = key;
+            this.generation = generation;
+            this.value = value;
+            this.result = result;
+        }
+
+        /**
+         * Promise caching the result of the capture before forwarding it to {@code promise}.
+         * The result is cached for the generation of the lookup, a view drawn in between misses
+         * next time.
+         */
+        @NonNull
+        public Promise cacheInto(@NonNull final Promise promise) {
+            return new PromiseImpl(new Callback() {
+                @Override
+                public void invoke(final Object... args) {
+                    final Object result = args.length > 0 ? args[0] : null;
+                    if (result instanceof String) {
+                        put(key, generation, value, (String) result);
+                    }
+                    promise.resolve(result);
+                }
+            }, new Callback() {
+                @Override
+                public void invoke(final Object... args) {
+                    // rejections are passed as an error map
+                    final ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap) args[0] : null;
+                    final String code = error != null && error.hasKey("code") ? error.getString("code") : ViewShot.ERROR_UNABLE_TO_SNAPSHOT;
+                    final String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+                    promise.reject(code, message);
+                }
+            });
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,288 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.UiThreadUtil;
+import com.facebook.react.uimanager.UIManagerModule;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Continuous capture of a view driven by the display frames instead of JS round trips. A frame
+ * is captured at most every {@code 1 / fps} seconds. While a capture is still encoding, due
+ * frames are dropped and merged into the next capture. Frames with the same pixels as the last
+ * delivered one are not encoded at all.
+ */
+public class CaptureSession implements Choreographer.FrameCallback, ViewShot.FrameFilter {
+    //region Constants
+    private static final String TAG = CaptureSession.class.getSimpleName();
+    /**
+     * Default target frame rate.
+     */
+    public static final double DEFAULT_FPS = 30;
+    /**
+     * Frame times jitter, a frame arriving slightly early is still considered due.
+     */
+    private static final long FRAME_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    //endregion
+
+    //region Class members
+    private final int id;
+    private final int tag;
+    private final long frameIntervalNanos;
+    private final UIManagerModule uiManager;
+    private final Factory factory;
+    private final Listener listener;
+    private final XXHash64 hasher = new XXHash64();
+
+    private volatile boolean running;
+    private boolean inFlight;
+    private long lastCaptureNanos;
+    private int[] row;
+    private long lastHash;
+    private boolean hasLastHash;
+
+    private long frames;
+    private long dropped;
+    private long unchanged;
+    //endregion
+
+    //region Constructors
+    /**
+     * @param id        session identifier, reported to the listener
+     * @param tag       react tag of the captured view
+     * @param fps       target frame rate
+     * @param uiManager resolves the view of the tag on each frame
+     * @param factory   creates the capture of a single frame
+     * @param listener  receives capture results
+     */
+    public CaptureSession(
+            final int id,
+            final int tag,
+            final double fps,
+            @NonNull final UIManagerModule uiManager,
+            @NonNull final Factory factory,
+            @NonNull final Listener listener) {
+        if (!(fps > 0)) {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+
+        this.id = id;
+        this.tag = tag;
+        this.frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+        this.uiManager = uiManager;
+        this.factory = factory;
+        this.listener = listener;
+    }
+    //endregion
+
+    //region Public API
+    public int getId() {
+        return id;
+    }
+
+    public void start() {
+        running = true;
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (running) {
+                    Choreographer.getInstance().postFrameCallback(CaptureSession.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop capturing, results of captures still in flight are discarded.
+     */
+    public void stop() {
+        running = false;
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Choreographer.getInstance().removeFrameCallback(CaptureSession.this);
+            }
+        });
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Amount of frames delivered to the listener.
+     */
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Amount of due frames dropped because the previous capture was still encoding.
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Amount of captured frames skipped because nothing changed.
+     */
+    public synchronized long getUnchangedCount() {
+        return unchanged;
+    }
+    //endregion
+
+    //region Overrides
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        if (!running) return;
+        Choreographer.getInstance().postFrameCallback(this);
+
+        if (frameTimeNanos - lastCaptureNanos < frameIntervalNanos - FRAME_TOLERANCE_NANOS) return;
+
+        synchronized (this) {
+            if (inFlight) {
+                // encoding fell behind, the next capture will show the latest state anyway
+                dropped++;
+                return;
+            }
+            inFlight = true;
+        }
+        lastCaptureNanos = frameTimeNanos;
+
+        try {
+            final View view = uiManager.resolveView(tag);
+            if (view == null) {
+                throw new IllegalStateException("No view found with reactTag: " + tag);
+            }
+
+            factory.create(tag, createPromise()).setFrameFilter(this).execute(view);
+        } catch (final Throwable ex) {
+            Log.e(TAG, "Capture session " + id + " failed to capture view tag " + tag, ex);
+            stop();
+            finishFrame();
+            listener.onCaptureFailure(this, ViewShot.ERROR_UNABLE_TO_SNAPSHOT, ex.getMessage());
+        }
+    }
+
+    /**
+     * Skip frames identical to the last delivered one, called on a capture worker thread.
+     */
+    @Override
+    public boolean accept(@NonNull final Bitmap bitmap) {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+
+        // hash outside of the session lock, so the UI thread never waits for it
+        synchronized (hasher) {
+            if (row == null || row.length != w) {
+                row = new int[w];
+            }
+
+            hasher.reset();
+            for (int y = 0; y < h; y++) {
+                bitmap.getPixels(row, 0, w, 0, y, w, 1);
+                hasher.update(row, 0, w);
+            }
+            // rows of different sizes may hash the same
+            final long hash = hasher.digest() ^ ((long) w << 32 | h);
+
+            if (hasLastHash && hash == lastHash) {
+                synchronized (this) {
+                    unchanged++;
+                }
+                return false;
+            }
+
+            lastHash = hash;
+            hasLastHash = true;
+            return true;
+        }
+    }
+    //endregion
+
+    //region Implementation
+    @NonNull
+    private Promise createPromise() {
+        return new PromiseImpl(new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                finishFrame();
+
+                final Object result = args.length > 0 ? args[0] : null;
+                if (result == null) return; // unchanged frame
+
+                if (running) {
+                    synchronized (CaptureSession.this) {
+                        frames++;
+                    }
+                    listener.onCapture(CaptureSession.this, result.toString());
+                } else {
+                    listener.onCaptureDiscarded(CaptureSession.this, result.toString());
+                }
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                finishFrame();
+
+                // rejections are passed as an error map
+                final ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap) args[0] : null;
+                final String code = error != null && error.hasKey("code") ? error.getString("code") : ViewShot.ERROR_UNABLE_TO_SNAPSHOT;
+                final String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+
+                // a full queue is backpressure as well, keep going with the next frames
+                if (ViewShot.ERROR_CAPTURE_QUEUE_FULL.equals(code)) {
+                    synchronized (CaptureSession.this) {
+                        dropped++;
+                    }
+                    return;
+                }
+
+                if (running) {
+                    listener.onCaptureFailure(CaptureSession.this, code, message);
+                }
+            }
+        });
+    }
+
+    private synchronized void finishFrame() {
+        inFlight = false;
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Creates the capture of a single frame.
+     */
+    public interface Factory {
+        @NonNull
+        ViewShot create(int tag, @NonNull Promise promise) throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * A changed frame was captured.
+         */
+        void onCapture(@NonNull CaptureSession session, @NonNull String result);
+
+        /**
+         * A frame was captured after the session stopped, its result should be released.
+         */
+        void onCaptureDiscarded(@NonNull CaptureSession session, @NonNull String result);
+
+        void onCaptureFailure(@NonNull CaptureSession session, @NonNull String code, @Nullable String message);
+    }
+    //endregion
+}
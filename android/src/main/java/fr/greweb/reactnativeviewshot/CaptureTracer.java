@@ -0,0 +1,69 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.StringDef;
+
+/**
+ * Begin/end trace sections around the capture stages, to see captures on a timeline next to the
+ * spans of the app. Sections are strictly nested and begin and end on the same thread, section
+ * names are constants so tracing never allocates on its own.
+ *
+ * @see SystemCaptureTracer
+ */
+public interface CaptureTracer {
+    //region Constants
+    /**
+     * Names of the traced sections.
+     */
+    @StringDef({Section.EXECUTE, Section.CAPTURE, Section.PIXEL_COPY, Section.COMPRESS, Section.WRITE})
+    @interface Section {
+        /**
+         * UI block handing the capture to the scheduler.
+         */
+        String EXECUTE = "RNViewShot.execute";
+        /**
+         * Measuring and drawing the view on a capture worker, up to a pending PixelCopy.
+         */
+        String CAPTURE = "RNViewShot.captureViewImpl";
+        /**
+         * Resuming the capture once a PixelCopy request finished or timed out.
+         */
+        String PIXEL_COPY = "RNViewShot.pixelCopy";
+        /**
+         * Hashing and encoding the pixels into the output.
+         */
+        String COMPRESS = "RNViewShot.compress";
+        /**
+         * Flushing and closing the output.
+         */
+        String WRITE = "RNViewShot.write";
+    }
+
+    /**
+     * Tracer used when none is registered, does nothing.
+     */
+    CaptureTracer NONE = new CaptureTracer() {
+        @Override
+        public void beginSection(@NonNull final String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+    //endregion
+
+    //region Public API
+    /**
+     * Open a section on the current thread.
+     *
+     * @param name one of the {@link Section} names
+     */
+    void beginSection(@Section @NonNull String name);
+
+    /**
+     * Close the section last opened on the current thread.
+     */
+    void endSection();
+    //endregion
+}
@@ -0,0 +1,378 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.UiThreadUtil;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps the last capture of a view and tracks the areas of its subtree that changed since then,
+ * so the next capture only redraws those areas into the retained bitmap.
+ * <p>
+ * Invalidated views are collected before each draw, while their dirty flag is still set. Moved,
+ * resized, transformed, added and removed views are found by comparing the subtree geometry with
+ * the one of the last capture, as they do not always leave a dirty flag behind.
+ */
+public class DirtyRegionTracker implements ViewTreeObserver.OnPreDrawListener, View.OnAttachStateChangeListener {
+    //region Constants
+    /**
+     * Amount of views with a retained capture.
+     */
+    private static final int MAX_TRACKED_VIEWS = 4;
+
+    /**
+     * Trackers by react tag, least recently used first.
+     */
+    private static final LinkedHashMap<Integer, DirtyRegionTracker> trackers = new LinkedHashMap<>(8, 0.75f, true);
+    //endregion
+
+    //region Class members
+    private final WeakReference<View> root;
+    private final BitmapPool pool;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Region dirty = new Region();
+    /**
+     * Bounds of the subtree views in root coordinates, at the last capture.
+     */
+    private Map<View, Rect> bounds = new WeakHashMap<>();
+    private final Rect tmpRect = new Rect();
+    private final RectF tmpRectF = new RectF();
+
+    private Bitmap bitmap;
+    private boolean armed;
+    private boolean fullyDirty = true;
+    private boolean evicted;
+    //endregion
+
+    //region Constructors
+    private DirtyRegionTracker(@NonNull final View root, @NonNull final BitmapPool pool) {
+        this.root = new WeakReference<>(root);
+        this.pool = pool;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Tracker of the view with the given tag, created and attached on first use.
+     */
+    @NonNull
+    public static DirtyRegionTracker obtain(final int tag, @NonNull final View view, @NonNull final BitmapPool pool) {
+        final DirtyRegionTracker tracker;
+        final DirtyRegionTracker replaced;
+
+        synchronized (trackers) {
+            final DirtyRegionTracker existing = trackers.get(tag);
+            if (existing != null && existing.root.get() == view) {
+                return existing;
+            }
+
+            // tags are reused across reloads, never trust a tracker of another view
+            tracker = new DirtyRegionTracker(view, pool);
+            replaced = trackers.put(tag, tracker);
+        }
+
+        if (replaced != null) {
+            replaced.evict();
+        }
+        tracker.attach();
+        trimTrackers();
+        return tracker;
+    }
+
+    /**
+     * Drop all retained captures.
+     */
+    public static void clear() {
+        final DirtyRegionTracker[] all;
+        synchronized (trackers) {
+            all = trackers.values().toArray(new DirtyRegionTracker[0]);
+            trackers.clear();
+        }
+
+        for (final DirtyRegionTracker tracker : all) {
+            tracker.evict();
+        }
+    }
+
+    /**
+     * Take exclusive use of the retained bitmap, a fresh one is taken from the pool when the
+     * size or configuration changed. Must be followed by {@link #release()}.
+     *
+     * @return null when another capture of the view is in progress
+     */
+    @Nullable
+    public Bitmap acquire(final int width, final int height, @NonNull final Bitmap.Config config) {
+        if (!lock.tryLock()) return null;
+
+        if (bitmap == null || bitmap.isRecycled() || bitmap.getWidth() != width || bitmap.getHeight() != height
+                || bitmap.getConfig() != config) {
+            pool.put(bitmap);
+            bitmap = pool.get(width, height, config);
+            synchronized (this) {
+                fullyDirty = true;
+            }
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Area changed since the last call, in root coordinates. Must be called while holding the
+     * bitmap.
+     *
+     * @return null when everything has to be redrawn
+     */
+    @Nullable
+    public Region takeDirtyRegion() {
+        final View view = root.get();
+        final Map<View, Rect> current = new HashMap<>();
+        if (view != null) {
+            collectBounds(view, current);
+        }
+
+        synchronized (this) {
+            final boolean full = fullyDirty || !armed || view == null;
+
+            if (!full) {
+                for (final Map.Entry<View, Rect> entry : current.entrySet()) {
+                    final Rect previous = bounds.get(entry.getKey());
+                    if (!entry.getValue().equals(previous)) {
+                        dirty.union(entry.getValue());
+                        if (previous != null) {
+                            dirty.union(previous);
+                        }
+                    }
+                }
+                for (final Map.Entry<View, Rect> entry : bounds.entrySet()) {
+                    if (!current.containsKey(entry.getKey())) {
+                        dirty.union(entry.getValue());
+                    }
+                }
+            }
+
+            bounds = new WeakHashMap<>(current);
+            fullyDirty = false;
+
+            if (full) {
+                dirty.setEmpty();
+                return null;
+            }
+
+            final Region result = new Region();
+            result.set(dirty);
+            dirty.setEmpty();
+            return result;
+        }
+    }
+
+    /**
+     * Give the retained bitmap back once the capture is encoded.
+     */
+    public void release() {
+        final boolean drop;
+        synchronized (this) {
+            drop = evicted;
+        }
+
+        if (drop && bitmap != null) {
+            pool.put(bitmap);
+            bitmap = null;
+        }
+        lock.unlock();
+    }
+    //endregion
+
+    //region Overrides
+    @Override
+    public boolean onPreDraw() {
+        final View view = root.get();
+        if (view != null) {
+            synchronized (this) {
+                collectDirty(view);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(final View v) {
+        v.getViewTreeObserver().addOnPreDrawListener(this);
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(final View v) {
+        removePreDrawListener(v);
+
+        // draws happening while detached are not observed
+        synchronized (this) {
+            fullyDirty = true;
+        }
+    }
+    //endregion
+
+    //region Implementation
+    private void attach() {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final View view = root.get();
+                synchronized (DirtyRegionTracker.this) {
+                    if (view == null || evicted) return;
+                    // draws before this point were not observed
+                    armed = true;
+                    fullyDirty = true;
+                }
+
+                view.addOnAttachStateChangeListener(DirtyRegionTracker.this);
+                // isAttachedToWindow() needs API 19
+                if (view.getWindowToken() != null) {
+                    view.getViewTreeObserver().addOnPreDrawListener(DirtyRegionTracker.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop tracking and give the retained bitmap back, now or once the running capture releases it.
+     */
+    private void evict() {
+        synchronized (this) {
+            evicted = true;
+            armed = false;
+        }
+
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                final View view = root.get();
+                if (view != null) {
+                    view.removeOnAttachStateChangeListener(DirtyRegionTracker.this);
+                    removePreDrawListener(view);
+                }
+            }
+        });
+
+        if (lock.tryLock()) {
+            try {
+                pool.put(bitmap);
+                bitmap = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void removePreDrawListener(@NonNull final View view) {
+        final ViewTreeObserver observer = view.getViewTreeObserver();
+        if (observer.isAlive()) {
+            observer.removeOnPreDrawListener(this);
+        }
+    }
+
+    private static void trimTrackers() {
+        while (true) {
+            final DirtyRegionTracker eldest;
+            synchronized (trackers) {
+                if (trackers.size() <= MAX_TRACKED_VIEWS) return;
+
+                final Iterator<DirtyRegionTracker> it = trackers.values().iterator();
+                eldest = it.next();
+                it.remove();
+            }
+            eldest.evict();
+        }
+    }
+
+    /**
+     * Union the deepest dirty views of the subtree into the dirty region, a clean parent has no
+     * dirty descendants. Must be called while holding the tracker monitor.
+     */
+    private void collectDirty(@NonNull final View view) {
+        if (!view.isDirty()) return;
+
+        boolean dirtyChild = false;
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                final View child = group.getChildAt(i);
+                if (child != null && child.isDirty()) {
+                    dirtyChild = true;
+                    collectDirty(child);
+                }
+            }
+        }
+
+        if (!dirtyChild && boundsInRoot(view, tmpRect, tmpRectF)) {
+            dirty.union(tmpRect);
+        }
+    }
+
+    private void collectBounds(@NonNull final View view, @NonNull final Map<View, Rect> out) {
+        if (view.getVisibility() != View.VISIBLE) return;
+
+        final Rect rect = new Rect();
+        if (!boundsInRoot(view, rect, new RectF())) return;
+        out.put(view, rect);
+
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                final View child = group.getChildAt(i);
+                if (child != null) {
+                    collectBounds(child, out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounds of the view in root coordinates, including transformations.
+     *
+     * @param work scratch rect
+     * @return false when the view is not a descendant of the root anymore
+     */
+    private boolean boundsInRoot(@NonNull final View view, @NonNull final Rect out, @NonNull final RectF work) {
+        final View rootView = root.get();
+        if (rootView == null) return false;
+
+        work.set(0, 0, view.getWidth(), view.getHeight());
+
+        View v = view;
+        while (v != rootView) {
+            final Matrix matrix = v.getMatrix();
+            if (matrix != null && !matrix.isIdentity()) {
+                matrix.mapRect(work);
+            }
+
+            final ViewParent parent = v.getParent();
+            if (!(parent instanceof View)) return false;
+
+            final View parentView = (View) parent;
+            work.offset(v.getLeft() - parentView.getScrollX(), v.getTop() - parentView.getScrollY());
+            v = parentView;
+        }
+
+        work.roundOut(out);
+        return true;
+    }
+    //endregion
+}
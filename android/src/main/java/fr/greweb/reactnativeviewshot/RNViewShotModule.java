@@ -6,26 +6,42 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.AsyncTask;
 import androidx.annotation.NonNull;
-import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.View;
 
+import com.facebook.react.bridge.Callback;
 import com.facebook.react.bridge.GuardedAsyncTask;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.PromiseImpl;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.blob.BlobModule;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.uimanager.NativeViewHierarchyManager;
+import com.facebook.react.uimanager.UIBlock;
 import com.facebook.react.uimanager.UIManagerModule;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
 
+import javax.annotation.Nullable;
+
+import fr.greweb.reactnativeviewshot.CaptureScheduler.Priority;
+import fr.greweb.reactnativeviewshot.ViewShot.BitmapConfigs;
 import fr.greweb.reactnativeviewshot.ViewShot.Formats;
 import fr.greweb.reactnativeviewshot.ViewShot.Results;
 
@@ -33,13 +49,74 @@ public class RNViewShotModule extends ReactContextBaseJavaModule {
 
     public static final String RNVIEW_SHOT = "RNViewShot";
 
+    /**
+     * Event sent for each changed frame of a capture session.
+     */
+    public static final String EVENT_CAPTURE_SESSION_FRAME = "RNViewShotCaptureSessionFrame";
+
+    /**
+     * Event sent when a capture session frame failed.
+     */
+    public static final String EVENT_CAPTURE_SESSION_ERROR = "RNViewShotCaptureSessionError";
+
     private final ReactApplicationContext reactContext;
 
-    private final Executor executor = Executors.newCachedThreadPool();
+    private final CaptureScheduler scheduler;
+
+    private final Map<Integer, CaptureSession> sessions = new ConcurrentHashMap<>();
+
+    private final CaptureResultCache resultCache = new CaptureResultCache();
+
+    private final CaptureCoalescer coalescer = new CaptureCoalescer(new CaptureCoalescer.Sharer() {
+        @Nullable
+        @Override
+        public Object share(@Nullable final Object result) {
+            return shareResult(result);
+        }
+    });
+
+    /**
+     * Unfinished captures by the {@code captureId} option, for {@link #cancelCapture}.
+     */
+    private final Map<String, List<ViewShot>> inFlight = new HashMap<>();
+
+    private final CaptureMetricsRegistry metrics = new CaptureMetricsRegistry();
+
+    private final CaptureTracer tracer;
+
+    /**
+     * Temp file captures of the process, shared by the module instances of reloads.
+     */
+    @Nullable
+    private static CaptureStore store;
+
+    private static boolean legacyFilesCleaned;
+
+    /**
+     * Memory results, served by {@link CaptureContentProvider}.
+     */
+    private static final CaptureMemoryStore memoryStore = new CaptureMemoryStore();
+
+    private final String memoryUriPrefix;
 
     public RNViewShotModule(ReactApplicationContext reactContext) {
+        this(reactContext, new CaptureScheduler());
+    }
+
+    public RNViewShotModule(ReactApplicationContext reactContext, CaptureScheduler scheduler) {
+        this(reactContext, scheduler, CaptureTracer.NONE);
+    }
+
+    /**
+     * @param tracer traces the stages of every capture
+     */
+    public RNViewShotModule(ReactApplicationContext reactContext, CaptureScheduler scheduler, @NonNull CaptureTracer tracer) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.scheduler = scheduler;
+        this.tracer = tracer;
+        this.memoryUriPrefix = CaptureContentProvider.uriPrefix(reactContext.getPackageName());
+        cleanLegacyFiles(reactContext);
     }
 
     @Override
@@ -55,25 +132,276 @@ public class RNViewShotModule extends ReactContextBaseJavaModule {
     @Override
     public void onCatalystInstanceDestroy() {
         super.onCatalystInstanceDestroy();
-        new CleanTask(getReactApplicationContext()).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        for (final CaptureSession session : sessions.values()) {
+            session.stop();
+        }
+        sessions.clear();
+        resultCache.clear();
+        memoryStore.clear();
+        scheduler.shutdown();
+        DirtyRegionTracker.clear();
+        ViewShot.trimDeflaters();
     }
 
+    /**
+     * Release a temp file or memory capture, files are deleted in batches in the background.
+     */
     @ReactMethod
     public void releaseCapture(String uri) {
+        resultCache.release(uri);
+        if (uri.startsWith(memoryUriPrefix)) {
+            memoryStore.release(uri.substring(memoryUriPrefix.length()));
+            return;
+        }
+
         final String path = Uri.parse(uri).getPath();
         if (path == null) return;
-        File file = new File(path);
-        if (!file.exists()) return;
-        File parent = file.getParentFile();
-        if (parent.equals(reactContext.getExternalCacheDir()) || parent.equals(reactContext.getCacheDir())) {
-            file.delete();
+        obtainStore(reactContext).release(new File(path));
+    }
+
+    /**
+     * Result of a capture for one more request, which releases it on its own: temp files and
+     * memory captures are retained once more, blobs are stored again and result maps are copied.
+     */
+    @Nullable
+    private Object shareResult(@Nullable final Object result) {
+        if (result instanceof String) {
+            final String uri = (String) result;
+            if (uri.startsWith(memoryUriPrefix)) {
+                final String alias = memoryStore.alias(uri.substring(memoryUriPrefix.length()));
+                return alias != null ? memoryUriPrefix + alias : uri;
+            }
+            if (uri.startsWith("file:")) {
+                final String path = Uri.parse(uri).getPath();
+                if (path != null) {
+                    obtainStore(reactContext).retain(new File(path));
+                }
+            }
+            return uri;
+        }
+        if (!(result instanceof ReadableMap)) return result;
+
+        final ReadableMap map = (ReadableMap) result;
+        final WritableMap copy = Arguments.createMap();
+        copy.merge(map);
+        if (map.hasKey("uri")) {
+            copy.putString("uri", (String) shareResult(map.getString("uri")));
+        } else if (map.hasKey("blob")) {
+            copy.putMap("blob", (ReadableMap) shareResult(map.getMap("blob")));
+        } else if (map.hasKey("blobId")) {
+            final BlobModule blobModule = reactContext.getNativeModule(BlobModule.class);
+            if (blobModule != null) {
+                // blobs are removed when closed, each request gets its own
+                copy.putString("blobId", blobModule.store(blobModule.resolve(map)));
+                copy.putInt("offset", 0);
+            }
         }
+        return copy;
     }
 
+    /**
+     * Release the file or the blob of a result nobody will receive.
+     *
+     * @param result result string, blob descriptor or result map holding either
+     */
+    private void releaseResult(@NonNull final Object result) {
+        if (result instanceof String) {
+            final String uri = (String) result;
+            if (uri.startsWith("file:") || uri.startsWith(memoryUriPrefix)) {
+                releaseCapture(uri);
+            }
+            return;
+        }
+        if (!(result instanceof ReadableMap)) return;
+
+        final ReadableMap map = (ReadableMap) result;
+        if (map.hasKey("uri")) {
+            releaseResult(map.getString("uri"));
+        } else if (map.hasKey("blob")) {
+            releaseResult(map.getMap("blob"));
+        } else if (map.hasKey("blobId")) {
+            final BlobModule blobModule = reactContext.getNativeModule(BlobModule.class);
+            if (blobModule != null) {
+                blobModule.remove(map.getString("blobId"));
+            }
+        }
+    }
+
+    /**
+     * Identical requests made before the capture resolves its view, typically in the same frame,
+     * are given the result of that capture instead of capturing again.
+     */
     @ReactMethod
     public void captureRef(int tag, ReadableMap options, Promise promise) {
+        final CaptureCoalescer.Group group = coalescer.join(tag + "|" + CaptureResultCache.optionsKey(options), promise);
+        if (group == null) return;
+
+        try {
+            final UIManagerModule uiManager = this.reactContext.getNativeModule(UIManagerModule.class);
+            final UIBlock capture = tag != -1 && options.hasKey("cache") && options.getBoolean("cache")
+                    ? new CachedCapture(tag, options, group.promise())
+                    : createViewShot(tag, options, Priority.USER_INITIATED, group.promise());
+            uiManager.addUIBlock(new UIBlock() {
+                @Override
+                public void execute(final NativeViewHierarchyManager nativeViewHierarchyManager) {
+                    group.close();
+                    capture.execute(nativeViewHierarchyManager);
+                }
+            });
+        } catch (final Throwable ex) {
+            Log.e(RNVIEW_SHOT, "Failed to snapshot view tag " + tag, ex);
+            group.close();
+            promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Failed to snapshot view tag " + tag);
+        }
+    }
+
+    /**
+     * Capture many views from the same UI state, resolves with the results in the order of the
+     * tags. A {@code fileName} option gets the index of each view appended.
+     */
+    @ReactMethod
+    public void captureRefs(final ReadableArray tags, final ReadableMap options, Promise promise) {
+        try {
+            final int[] viewTags = new int[tags.size()];
+            for (int i = 0; i < viewTags.length; i++) {
+                viewTags[i] = tags.getInt(i);
+            }
+
+            final String fileName = options.hasKey("fileName") ? options.getString("fileName") : null;
+            final UIManagerModule uiManager = this.reactContext.getNativeModule(UIManagerModule.class);
+            uiManager.addUIBlock(new CaptureBatch(viewTags, scheduler.getParallelism(), new CaptureBatch.Factory() {
+                @NonNull
+                @Override
+                public ViewShot create(final int tag, final int index, @NonNull final Promise promise) throws IOException {
+                    return createViewShot(tag, options, Priority.USER_INITIATED, promise, fileName != null ? fileName + "-" + index : null);
+                }
+
+                @Override
+                public void release(@NonNull final Object result) {
+                    releaseResult(result);
+                }
+            }, promise));
+        } catch (final Throwable ex) {
+            Log.e(RNVIEW_SHOT, "Failed to snapshot view tags", ex);
+            promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Failed to snapshot view tags");
+        }
+    }
+
+    @ReactMethod
+    public void captureScreen(ReadableMap options, Promise promise) {
+        captureRef(-1, options, promise);
+    }
+
+    /**
+     * Cancel the unfinished captures started with the {@code captureId} option, their promises
+     * reject with {@link ViewShot#ERROR_CAPTURE_CANCELLED}. Queued captures are cancelled when
+     * they are dequeued.
+     */
+    @ReactMethod
+    public void cancelCapture(final String captureId) {
+        final List<ViewShot> captures;
+        synchronized (inFlight) {
+            captures = inFlight.remove(captureId);
+        }
+        if (captures == null) return;
+
+        for (final ViewShot capture : captures) {
+            capture.cancel();
+        }
+    }
+
+    @ReactMethod
+    public void getCaptureQueueDepth(Promise promise) {
+        final WritableMap depth = Arguments.createMap();
+        depth.putInt("userInitiated", scheduler.getQueueDepth(Priority.USER_INITIATED));
+        depth.putInt("background", scheduler.getQueueDepth(Priority.BACKGROUND));
+        depth.putInt("active", scheduler.getActiveCount());
+        depth.putInt("parallelism", scheduler.getParallelism());
+        depth.putInt("capacity", scheduler.getQueueCapacity());
+        depth.putDouble("rejected", scheduler.getRejectedCount());
+        depth.putDouble("coalesced", coalescer.getCoalescedCount());
+        promise.resolve(depth);
+    }
+
+    /**
+     * Resolve with the aggregated metrics of the captures since the last reset: stage durations,
+     * bitmap and encoded sizes, bitmap reuse rate and failures by error code.
+     */
+    @ReactMethod
+    public void getCaptureMetrics(Promise promise) {
+        promise.resolve(Arguments.makeNativeMap(metrics.snapshot()));
+    }
+
+    @ReactMethod
+    public void resetCaptureMetrics() {
+        metrics.reset();
+    }
+
+    /**
+     * Start capturing the view on every display frame, up to the {@code fps} option. Changed
+     * frames are delivered with {@link #EVENT_CAPTURE_SESSION_FRAME} events, failures with
+     * {@link #EVENT_CAPTURE_SESSION_ERROR} events.
+     *
+     * @param sessionId identifier chosen by JS, reported in the events
+     */
+    @ReactMethod
+    public void startCaptureSession(final int sessionId, final int tag, final ReadableMap options, Promise promise) {
+        try {
+            if (options.hasKey("result") && Results.BLOB.equals(options.getString("result"))) {
+                promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Capture sessions do not support blob results");
+                return;
+            }
+
+            final double fps = options.hasKey("fps") ? options.getDouble("fps") : CaptureSession.DEFAULT_FPS;
+            final UIManagerModule uiManager = this.reactContext.getNativeModule(UIManagerModule.class);
+
+            final CaptureSession session = new CaptureSession(sessionId, tag, fps, uiManager, new CaptureSession.Factory() {
+                @NonNull
+                @Override
+                public ViewShot create(final int tag, @NonNull final Promise promise) throws IOException {
+                    // frames are delivered as plain results
+                    return createViewShot(tag, options, Priority.BACKGROUND, promise)
+                            .setHashes(false, false)
+                            .setMetrics(metrics, false);
+                }
+            }, new SessionEvents());
+
+            final CaptureSession previous = sessions.put(sessionId, session);
+            if (previous != null) {
+                previous.stop();
+            }
+            session.start();
+            promise.resolve(sessionId);
+        } catch (final Throwable ex) {
+            Log.e(RNVIEW_SHOT, "Failed to start capture session of view tag " + tag, ex);
+            promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Failed to start capture session of view tag " + tag);
+        }
+    }
+
+    @ReactMethod
+    public void stopCaptureSession(final int sessionId) {
+        final CaptureSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.stop();
+        }
+    }
+
+    /**
+     * Parse capture options and create the capture of a view.
+     *
+     * @param defaultPriority priority used when the options do not specify one
+     */
+    @NonNull
+    private ViewShot createViewShot(int tag, ReadableMap options, @Priority int defaultPriority, Promise promise) throws IOException {
+        return createViewShot(tag, options, defaultPriority, promise, options.hasKey("fileName") ? options.getString("fileName") : null);
+    }
+
+    /**
+     * @param fileName start of the temporary file name, instead of the {@code fileName} option
+     */
+    @NonNull
+    private ViewShot createViewShot(int tag, ReadableMap options, @Priority int defaultPriority, Promise promise, @Nullable String fileName) throws IOException {
         final ReactApplicationContext context = getReactApplicationContext();
-        final DisplayMetrics dm = context.getResources().getDisplayMetrics();
 
         final String extension = options.getString("format");
         final int imageFormat = "jpg".equals(extension)
@@ -88,41 +416,248 @@ public class RNViewShotModule extends ReactContextBaseJavaModule {
         final Integer scaleWidth = options.hasKey("width") ? options.getInt("width") : null;
         final Integer scaleHeight = options.hasKey("height") ? options.getInt("height") : null;
         final String resultStreamFormat = options.getString("result");
-        final String fileName = options.hasKey("fileName") ? options.getString("fileName") : null;
         final Boolean snapshotContentContainer = options.getBoolean("snapshotContentContainer");
         final boolean handleGLSurfaceView = options.hasKey("handleGLSurfaceViewOnAndroid") && options.getBoolean("handleGLSurfaceViewOnAndroid");
+        final boolean incremental = options.hasKey("incremental") && options.getBoolean("incremental");
+        final String bitmapConfig = options.hasKey("bitmapConfig") ? options.getString("bitmapConfig") : BitmapConfigs.ARGB;
+        final boolean parallelPng = options.hasKey("pngEncoder") && "parallel".equals(options.getString("pngEncoder"));
+        final int zipLevel = options.hasKey("zipLevel") ? options.getInt("zipLevel") : Deflater.DEFAULT_COMPRESSION;
+        final String zipStrategy = options.hasKey("zipStrategy") ? options.getString("zipStrategy") : null;
+        final boolean contentHash = options.hasKey("contentHash") && options.getBoolean("contentHash");
+        final boolean perceptualHash = options.hasKey("perceptualHash") && options.getBoolean("perceptualHash");
+        final boolean reportMetrics = options.hasKey("metrics") && options.getBoolean("metrics");
+        final String captureId = options.hasKey("captureId") ? options.getString("captureId") : null;
+        final long timeoutMs = options.hasKey("timeoutMs") ? (long) options.getDouble("timeoutMs") : 0;
+        final int priority = !options.hasKey("priority")
+                ? defaultPriority
+                : "background".equals(options.getString("priority"))
+                ? Priority.BACKGROUND
+                : Priority.USER_INITIATED;
+
+        final CaptureStore store = Results.TEMP_FILE.equals(resultStreamFormat) ? obtainStore(context) : null;
+        final File outputFile = store != null ? store.newFile(extension) : null;
+
+        final Activity activity = getCurrentActivity();
+
+        // the capture is known once created, and unregistered when its promise settles
+        final ViewShot[] capture = new ViewShot[1];
+        final Runnable unregister = captureId == null ? null : new Runnable() {
+            @Override
+            public void run() {
+                unregisterCapture(captureId, capture[0]);
+            }
+        };
+
+        capture[0] = new ViewShot(
+                tag, extension, imageFormat, quality,
+                scaleWidth, scaleHeight, outputFile, resultStreamFormat,
+                snapshotContentContainer, reactContext, activity, handleGLSurfaceView, trackFailures(promise, unregister), scheduler, priority)
+                .setTimeout(timeoutMs)
+                .setIncremental(incremental)
+                .setBitmapConfig(bitmapConfig)
+                .setParallelPng(parallelPng)
+                .setHashes(contentHash, perceptualHash)
+                .setMetrics(metrics, reportMetrics)
+                .setTracer(tracer)
+                .setStore(store, fileName != null ? fileName : TEMP_FILE_PREFIX + "-")
+                .setMemoryStore(memoryStore, memoryUriPrefix)
+                .setZipCompression(zipLevel, "filtered".equals(zipStrategy)
+                        ? Deflater.FILTERED
+                        : "huffman".equals(zipStrategy)
+                        ? Deflater.HUFFMAN_ONLY
+                        : Deflater.DEFAULT_STRATEGY);
+
+        if (captureId != null) {
+            synchronized (inFlight) {
+                List<ViewShot> captures = inFlight.get(captureId);
+                if (captures == null) {
+                    captures = new ArrayList<>();
+                    inFlight.put(captureId, captures);
+                }
+                captures.add(capture[0]);
+            }
+        }
+        return capture[0];
+    }
 
-        try {
-            File outputFile = null;
-            if (Results.TEMP_FILE.equals(resultStreamFormat)) {
-                outputFile = createTempFile(getReactApplicationContext(), extension, fileName);
+    private void unregisterCapture(@NonNull final String captureId, @Nullable final ViewShot capture) {
+        synchronized (inFlight) {
+            final List<ViewShot> captures = inFlight.get(captureId);
+            if (captures == null) return;
+
+            captures.remove(capture);
+            if (captures.isEmpty()) {
+                inFlight.remove(captureId);
             }
+        }
+    }
 
-            final Activity activity = getCurrentActivity();
-            final UIManagerModule uiManager = this.reactContext.getNativeModule(UIManagerModule.class);
+    /**
+     * Count the failures of a capture in the metrics.
+     *
+     * @param onSettled run when the capture resolves or rejects
+     */
+    @NonNull
+    private Promise trackFailures(@NonNull final Promise promise, @Nullable final Runnable onSettled) {
+        return new PromiseImpl(new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                if (onSettled != null) {
+                    onSettled.run();
+                }
+                promise.resolve(args.length > 0 ? args[0] : null);
+            }
+        }, new Callback() {
+            @Override
+            public void invoke(final Object... args) {
+                // rejections are passed as an error map
+                final ReadableMap error = args.length > 0 && args[0] instanceof ReadableMap ? (ReadableMap) args[0] : null;
+                final String code = error != null && error.hasKey("code") ? error.getString("code") : ViewShot.ERROR_UNABLE_TO_SNAPSHOT;
+                final String message = error != null && error.hasKey("message") ? error.getString("message") : null;
+                if (onSettled != null) {
+                    onSettled.run();
+                }
+                metrics.recordFailure(code);
+                promise.reject(code, message);
+            }
+        });
+    }
 
-            uiManager.addUIBlock(new ViewShot(
-                    tag, extension, imageFormat, quality,
-                    scaleWidth, scaleHeight, outputFile, resultStreamFormat,
-                    snapshotContentContainer, reactContext, activity, handleGLSurfaceView, promise, executor)
-            );
-        } catch (final Throwable ex) {
-            Log.e(RNVIEW_SHOT, "Failed to snapshot view tag " + tag, ex);
-            promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Failed to snapshot view tag " + tag);
+    /**
+     * Gives the previous result back when the view was not invalidated since, captures it
+     * otherwise.
+     */
+    private class CachedCapture implements UIBlock {
+        private final int tag;
+        private final ReadableMap options;
+        private final Promise promise;
+
+        private CachedCapture(final int tag, @NonNull final ReadableMap options, @NonNull final Promise promise) {
+            this.tag = tag;
+            this.options = options;
+            this.promise = promise;
+        }
+
+        @Override
+        public void execute(final NativeViewHierarchyManager nativeViewHierarchyManager) {
+            try {
+                final View view = nativeViewHierarchyManager.resolveView(tag);
+                if (view == null) {
+                    promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "No view found with reactTag: " + tag);
+                    return;
+                }
+
+                final CaptureResultCache.Lookup lookup = resultCache.lookup(tag, view, CaptureResultCache.optionsKey(options));
+                // memory results may have been evicted meanwhile
+                if (lookup.result != null && (!lookup.result.startsWith(memoryUriPrefix)
+                        || memoryStore.contains(lookup.result.substring(memoryUriPrefix.length())))) {
+                    // every hit releases its result on its own
+                    promise.resolve(shareResult(lookup.result));
+                    return;
+                }
+
+                createViewShot(tag, options, Priority.USER_INITIATED, lookup.cacheInto(promise)).execute(view);
+            } catch (final Throwable ex) {
+                Log.e(RNVIEW_SHOT, "Failed to snapshot view tag " + tag, ex);
+                promise.reject(ViewShot.ERROR_UNABLE_TO_SNAPSHOT, "Failed to snapshot view tag " + tag);
+            }
         }
     }
 
-    @ReactMethod
-    public void captureScreen(ReadableMap options, Promise promise) {
-        captureRef(-1, options, promise);
+    /**
+     * Forwards capture session results to JS.
+     */
+    private class SessionEvents implements CaptureSession.Listener {
+        @Override
+        public void onCapture(@NonNull final CaptureSession session, @NonNull final String result) {
+            final WritableMap event = Arguments.createMap();
+            event.putInt("sessionId", session.getId());
+            event.putString("uri", result);
+            event.putDouble("frame", session.getFrameCount());
+            event.putDouble("dropped", session.getDroppedCount());
+            event.putDouble("unchanged", session.getUnchangedCount());
+            emit(EVENT_CAPTURE_SESSION_FRAME, event);
+        }
+
+        @Override
+        public void onCaptureDiscarded(@NonNull final CaptureSession session, @NonNull final String result) {
+            if (result.startsWith("file:") || result.startsWith(memoryUriPrefix)) {
+                releaseCapture(result);
+            }
+        }
+
+        @Override
+        public void onCaptureFailure(@NonNull final CaptureSession session, @NonNull final String code, @Nullable final String message) {
+            if (!session.isRunning()) {
+                sessions.remove(session.getId(), session);
+            }
+
+            final WritableMap event = Arguments.createMap();
+            event.putInt("sessionId", session.getId());
+            event.putString("code", code);
+            event.putString("message", message);
+            emit(EVENT_CAPTURE_SESSION_ERROR, event);
+        }
+
+        private void emit(@NonNull final String eventName, @NonNull final WritableMap event) {
+            if (!reactContext.hasActiveCatalystInstance()) return;
+
+            reactContext
+                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(eventName, event);
+        }
+    }
+
+    /**
+     * Store of the memory results, shared with the content provider.
+     */
+    @NonNull
+    static CaptureMemoryStore getMemoryStore() {
+        return memoryStore;
     }
 
     private static final String TEMP_FILE_PREFIX = "ReactNative-snapshot-image";
 
     /**
-     * Asynchronous task that cleans up cache dirs (internal and, if available, external) of cropped
-     * image files. This is run when the catalyst instance is being destroyed (i.e. app is shutting
-     * down) and when the module is instantiated, to handle the case where the app crashed.
+     * Directory of the capture store, in the cache directories.
+     */
+    private static final String STORE_DIRECTORY = "RNViewShot";
+
+    /**
+     * Store of the temp file captures, in the cache directory on either internal or external
+     * storage. Created once per process so the directory is only chosen once.
+     */
+    @NonNull
+    private static synchronized CaptureStore obtainStore(@NonNull final Context context) {
+        if (store == null) {
+            final List<File> directories = new ArrayList<>(2);
+            final File externalCacheDir = context.getExternalCacheDir();
+            if (externalCacheDir != null) {
+                directories.add(new File(externalCacheDir, STORE_DIRECTORY));
+            }
+            final File internalCacheDir = context.getCacheDir();
+            if (internalCacheDir != null) {
+                directories.add(new File(internalCacheDir, STORE_DIRECTORY));
+            }
+            store = new CaptureStore(directories);
+        }
+        return store;
+    }
+
+    /**
+     * Delete once per process the temp files left in the cache directories by the versions
+     * before the capture store.
+     */
+    private static synchronized void cleanLegacyFiles(@NonNull final ReactContext context) {
+        if (legacyFilesCleaned) return;
+
+        legacyFilesCleaned = true;
+        new CleanTask(context).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Asynchronous task that cleans up cache dirs (internal and, if available, external) of
+     * legacy image files.
      */
     private static class CleanTask extends GuardedAsyncTask<Void, Void> implements FilenameFilter {
         private final File cacheDir;
@@ -163,34 +698,4 @@ public class RNViewShotModule extends ReactContextBaseJavaModule {
             }
         }
     }
-
-    /**
-     * Create a temporary file in the cache directory on either internal or external storage,
-     * whichever is available and has more free space.
-     */
-    @NonNull
-    private File createTempFile(@NonNull final Context context, @NonNull final String ext, String fileName) throws IOException {
-        final File externalCacheDir = context.getExternalCacheDir();
-        final File internalCacheDir = context.getCacheDir();
-        final File cacheDir;
-
-        if (externalCacheDir == null && internalCacheDir == null) {
-            throw new IOException("No cache directory available");
-        }
-
-        if (externalCacheDir == null) {
-            cacheDir = internalCacheDir;
-        } else if (internalCacheDir == null) {
-            cacheDir = externalCacheDir;
-        } else {
-            cacheDir = externalCacheDir.getFreeSpace() > internalCacheDir.getFreeSpace() ?
-                    externalCacheDir : internalCacheDir;
-        }
-
-        final String suffix = "." + ext;
-        if (fileName != null) {
-            return File.createTempFile(fileName, suffix, cacheDir);
-        }
-        return File.createTempFile(TEMP_FILE_PREFIX, suffix, cacheDir);
-    }
 }
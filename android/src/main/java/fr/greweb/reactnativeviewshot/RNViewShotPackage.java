@@ -10,10 +10,41 @@ import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.uimanager.ViewManager;
 import com.facebook.react.bridge.JavaScriptModule;
+
+import androidx.annotation.NonNull;
+
 public class RNViewShotPackage implements ReactPackage {
+    private final int maxParallelCaptures;
+    private final int maxQueuedCaptures;
+    private CaptureTracer tracer = CaptureTracer.NONE;
+
+    public RNViewShotPackage() {
+      this(CaptureScheduler.DEFAULT_PARALLELISM, CaptureScheduler.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param maxParallelCaptures amount of captures allowed to run at the same time
+     * @param maxQueuedCaptures   amount of captures allowed to wait for a free slot, further
+     *                            captures are rejected with E_CAPTURE_QUEUE_FULL
+     */
+    public RNViewShotPackage(int maxParallelCaptures, int maxQueuedCaptures) {
+      this.maxParallelCaptures = maxParallelCaptures;
+      this.maxQueuedCaptures = maxQueuedCaptures;
+    }
+
+    /**
+     * Trace the stages of every capture, with {@link SystemCaptureTracer} or a custom tracer
+     * forwarding the sections to another tracing backend.
+     */
+    public RNViewShotPackage setTracer(@NonNull CaptureTracer tracer) {
+      this.tracer = tracer;
+      return this;
+    }
+
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-      return Arrays.<NativeModule>asList(new RNViewShotModule(reactContext));
+      final CaptureScheduler scheduler = new CaptureScheduler(maxParallelCaptures, maxQueuedCaptures);
+      return Arrays.<NativeModule>asList(new RNViewShotModule(reactContext, scheduler, tracer));
     }
 
     // Deprecated RN 0.47
@@ -0,0 +1,28 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.os.Build;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Traces captures with {@link Trace}, sections show up in systrace and Perfetto once the app is
+ * traced. Does nothing below API 18.
+ */
+public final class SystemCaptureTracer implements CaptureTracer {
+    //region Overrides
+    @Override
+    public void beginSection(@NonNull final String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @Override
+    public void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+    //endregion
+}
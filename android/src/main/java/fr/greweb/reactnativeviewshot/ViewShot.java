@@ -4,34 +4,43 @@ import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.Region;
+import android.graphics.RegionIterator;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
 import androidx.annotation.StringDef;
 
-import android.os.Looper;
-import android.util.Base64;
 import android.util.Log;
+import android.util.Pair;
 import android.view.PixelCopy;
 import android.view.SurfaceView;
 import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.Window;
 import android.widget.ScrollView;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.blob.BlobModule;
 import com.facebook.react.uimanager.NativeViewHierarchyManager;
 import com.facebook.react.uimanager.UIBlock;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -39,17 +48,13 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Locale;
-import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.Deflater;
 
 import javax.annotation.Nullable;
@@ -73,9 +78,17 @@ public class ViewShot implements UIBlock {
      */
     public static final String ERROR_UNABLE_TO_SNAPSHOT = "E_UNABLE_TO_SNAPSHOT";
     /**
-     * pre-allocated output stream size for screenshot. In real life example it will eb around 7Mb.
+     * Error code returned when the capture scheduler has no room left for a new capture.
      */
-    private static final int PREALLOCATE_SIZE = 64 * 1024;
+    public static final String ERROR_CAPTURE_QUEUE_FULL = "E_CAPTURE_QUEUE_FULL";
+    /**
+     * Error code returned when the capture was cancelled before it finished.
+     */
+    public static final String ERROR_CAPTURE_CANCELLED = "E_CAPTURE_CANCELLED";
+    /**
+     * Error code returned when the capture did not finish within its timeout.
+     */
+    public static final String ERROR_CAPTURE_TIMEOUT = "E_CAPTURE_TIMEOUT";
     /**
      * ARGB size in bytes.
      */
@@ -84,6 +97,30 @@ public class ViewShot implements UIBlock {
      * Wait timeout for surface view capture.
      */
     private static final int SURFACE_VIEW_READ_PIXELS_TIMEOUT = 5;
+    /**
+     * PixelCopy result used when the request itself failed.
+     */
+    private static final int PIXEL_COPY_REQUEST_FAILED = -1;
+    /**
+     * Incremental captures redraw fragmented dirty regions as a single rectangle above that.
+     */
+    private static final int MAX_DIRTY_RECTS = 8;
+    /**
+     * Tall content bigger than that (16Mb of ARGB pixels) is rendered in tiles.
+     */
+    private static final long TILED_THRESHOLD_BYTES = 16L * 1024 * 1024;
+    /**
+     * Size of a tile bitmap (4Mb), tiles span the full capture width.
+     */
+    private static final int TILE_BYTES = 4 * 1024 * 1024;
+    /**
+     * Minimum height of a tile, each tile is a full traversal of the view tree.
+     */
+    private static final int MIN_TILE_HEIGHT = 64;
+    /**
+     * Pixels read at once while hashing a bitmap.
+     */
+    private static final int HASH_BAND_PIXELS = 64 * 1024;
 
     @SuppressWarnings("WeakerAccess")
     @IntDef({Formats.JPEG, Formats.PNG, Formats.WEBP, Formats.RAW})
@@ -103,7 +140,7 @@ public class ViewShot implements UIBlock {
     /**
      * Supported Output results.
      */
-    @StringDef({Results.BASE_64, Results.DATA_URI, Results.TEMP_FILE, Results.ZIP_BASE_64})
+    @StringDef({Results.BASE_64, Results.DATA_URI, Results.TEMP_FILE, Results.ZIP_BASE_64, Results.BLOB, Results.MEMORY})
     public @interface Results {
         /**
          * Save screenshot as temp file on device.
@@ -121,14 +158,49 @@ public class ViewShot implements UIBlock {
          * Base64 data uri.
          */
         String DATA_URI = "data-uri";
+        /**
+         * Encoded image held by the React Native Blob module, resolved with a blob descriptor.
+         */
+        String BLOB = "blob";
+        /**
+         * Encoded image kept in memory, resolved with its content URI.
+         */
+        String MEMORY = "memory";
+    }
+
+    /**
+     * Supported bitmap configurations.
+     */
+    @StringDef({BitmapConfigs.ARGB, BitmapConfigs.RGB_565, BitmapConfigs.GRAYSCALE, BitmapConfigs.AUTO})
+    public @interface BitmapConfigs {
+        /**
+         * 32 bit ARGB pixels.
+         */
+        String ARGB = "argb";
+        /**
+         * 16 bit opaque pixels, half the memory of ARGB.
+         */
+        String RGB_565 = "rgb565";
+        /**
+         * 8 bit luma, encoded as grayscale PNG and single byte RAW pixels.
+         */
+        String GRAYSCALE = "grayscale";
+        /**
+         * RGB_565 when the captured view is opaque, ARGB otherwise.
+         */
+        String AUTO = "auto";
     }
     //endregion
 
     //region Static members
     /**
-     * Image output buffer used as a source for base64 encoding
+     * Output buffers leased by captures, used as a source for base64 encoding
      */
-    private static byte[] outputBuffer = new byte[PREALLOCATE_SIZE];
+    private static final BufferPool buffers = new BufferPool();
+    /**
+     * Deflaters of zipped results and parallel PNG encoding, native zlib memory is kept bounded.
+     */
+    private static final DeflaterPool deflaters = new DeflaterPool();
     //endregion
 
     //region Class members
@@ -144,11 +216,68 @@ public class ViewShot implements UIBlock {
     private final String result;
     private final Promise promise;
     private final Boolean snapshotContentContainer;
-    @SuppressWarnings({"unused", "FieldCanBeLocal"})
     private final ReactApplicationContext reactContext;
     private final boolean handleGLSurfaceView;
     private final Activity currentActivity;
-    private final Executor executor;
+    private final CaptureScheduler scheduler;
+    @CaptureScheduler.Priority
+    private final int priority;
+    @Nullable
+    private FrameFilter frameFilter;
+    private volatile boolean frameSkipped;
+    private boolean incremental;
+    /**
+     * Scale applied while drawing the view, when rendering straight at the requested size.
+     */
+    private float drawScaleX = 1f;
+    private float drawScaleY = 1f;
+    @BitmapConfigs
+    private String bitmapConfig = BitmapConfigs.ARGB;
+    /**
+     * Configuration of the capture bitmaps, resolved against the captured view.
+     */
+    private Bitmap.Config renderConfig = Bitmap.Config.ARGB_8888;
+    /**
+     * Pixel format in the header of RAW outputs, null for ARGB.
+     */
+    @Nullable
+    private volatile String rawPixelFormat;
+    private boolean parallelPng;
+    private int zipLevel = Deflater.DEFAULT_COMPRESSION;
+    private int zipStrategy = Deflater.DEFAULT_STRATEGY;
+    private boolean contentHash;
+    private boolean perceptualHash;
+    /**
+     * Hashes of the encoded image, when requested.
+     */
+    @Nullable
+    private volatile ImageHasher hasher;
+    /**
+     * Timings of this capture, started at creation.
+     */
+    private final CaptureMetrics metrics = new CaptureMetrics();
+    @Nullable
+    private CaptureMetricsRegistry metricsRegistry;
+    private boolean reportMetrics;
+    @NonNull
+    private CaptureTracer tracer = CaptureTracer.NONE;
+    @Nullable
+    private CaptureStore store;
+    private String storePrefix;
+    @Nullable
+    private CaptureMemoryStore memoryStore;
+    private String memoryUriPrefix;
+    private volatile boolean cancelled;
+    private long timeoutMs;
+    /**
+     * {@link System#nanoTime()} past which the capture is abandoned, when it has a timeout.
+     */
+    private long deadline;
+    /**
+     * PixelCopy the capture waits for, resumed right away on cancellation.
+     */
+    @Nullable
+    private volatile PixelCopyContinuation pendingCopy;
     //endregion
 
     //region Constructors
@@ -167,7 +296,8 @@ public class ViewShot implements UIBlock {
             final Activity currentActivity,
             final boolean handleGLSurfaceView,
             final Promise promise,
-            final Executor executor) {
+            final CaptureScheduler scheduler,
+            @CaptureScheduler.Priority final int priority) {
         this.tag = tag;
         this.extension = extension;
         this.format = format;
@@ -181,140 +311,359 @@ public class ViewShot implements UIBlock {
         this.currentActivity = currentActivity;
         this.handleGLSurfaceView = handleGLSurfaceView;
         this.promise = promise;
-        this.executor = executor;
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Skip the encoding of frames rejected by the filter, the promise then resolves with null
+     * and no output is left behind.
+     */
+    public ViewShot setFrameFilter(@Nullable final FrameFilter frameFilter) {
+        this.frameFilter = frameFilter;
+        return this;
+    }
+
+    /**
+     * Keep the capture of the view and on the next capture only redraw the areas that changed.
+     */
+    public ViewShot setIncremental(final boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    /**
+     * Use smaller bitmaps, RGB_565 or grayscale, at the expense of alpha and color depth.
+     */
+    public ViewShot setBitmapConfig(@BitmapConfigs final String bitmapConfig) {
+        this.bitmapConfig = bitmapConfig;
+        return this;
+    }
+
+    /**
+     * Encode PNG images on all cores instead of with the single threaded platform encoder.
+     */
+    public ViewShot setParallelPng(final boolean parallelPng) {
+        this.parallelPng = parallelPng;
+        return this;
+    }
+
+    /**
+     * Compute hashes of the encoded pixels, the promise then resolves with a map holding the
+     * result under {@code uri} and the hex hashes under {@code contentHash} and
+     * {@code perceptualHash}.
+     *
+     * @param content    XXH64 of the pixels
+     * @param perceptual dHash of the image, see {@link ImageHasher}
+     */
+    public ViewShot setHashes(final boolean content, final boolean perceptual) {
+        this.contentHash = content;
+        this.perceptualHash = perceptual;
+        return this;
+    }
+
+    /**
+     * Record the metrics of the capture once it succeeds.
+     *
+     * @param registry aggregates the metrics, may be null
+     * @param report   also resolve with the metrics, under {@code metrics} of a result map
+     */
+    public ViewShot setMetrics(@Nullable final CaptureMetricsRegistry registry, final boolean report) {
+        this.metricsRegistry = registry;
+        this.reportMetrics = report;
+        return this;
+    }
+
+    /**
+     * Trace the stages of the capture, see {@link CaptureTracer.Section}.
+     */
+    public ViewShot setTracer(@NonNull final CaptureTracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    /**
+     * Commit the output file into the store once written, the promise resolves with the stored
+     * file. The output must be a pending file of the store.
+     *
+     * @param prefix start of the stored file name
+     */
+    public ViewShot setStore(@Nullable final CaptureStore store, @NonNull final String prefix) {
+        this.store = store;
+        this.storePrefix = prefix;
+        return this;
+    }
+
+    /**
+     * Keep {@code memory} results in the store, the promise resolves with the prefix followed by
+     * the key of the capture.
+     */
+    public ViewShot setMemoryStore(@Nullable final CaptureMemoryStore memoryStore, @NonNull final String uriPrefix) {
+        this.memoryStore = memoryStore;
+        this.memoryUriPrefix = uriPrefix;
+        return this;
+    }
+
+    /**
+     * Abandon the capture when it is not done after the timeout, counted from now. The promise
+     * then rejects with {@link #ERROR_CAPTURE_TIMEOUT}.
+     *
+     * @param timeoutMs timeout in milliseconds, 0 for none
+     */
+    public ViewShot setTimeout(final long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        this.deadline = timeoutMs > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs) : 0;
+        return this;
+    }
+
+    /**
+     * Stop the capture at the next stage, the promise then rejects with
+     * {@link #ERROR_CAPTURE_CANCELLED}. Pooled bitmaps and buffers are given back and the output
+     * file is deleted. Does nothing once the capture is done.
+     */
+    public void cancel() {
+        cancelled = true;
+
+        final PixelCopyContinuation copy = pendingCopy;
+        if (copy != null) {
+            copy.abandon();
+        }
+    }
+
+    /**
+     * Compression of {@code zip-base64} results.
+     *
+     * @param level    zlib compression level, 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     * @param strategy one of the {@link Deflater} strategies
+     */
+    public ViewShot setZipCompression(final int level, final int strategy) {
+        this.zipLevel = level;
+        this.zipStrategy = strategy;
+        return this;
+    }
+
+    /**
+     * Capture an already resolved view, for callers that do not go through a UI block.
+     */
+    public void execute(@NonNull final View view) {
+        schedule(null, view);
     }
     //endregion
 
     //region Overrides
     @Override
     public void execute(final NativeViewHierarchyManager nativeViewHierarchyManager) {
-        executor.execute(new Runnable () {
-            @Override
-            public void run() {
-                try {
-                    final View view;
+        schedule(nativeViewHierarchyManager, null);
+    }
+    //endregion
 
-                    if (tag == -1) {
-                        // Full screen capture requires special handling
-                        view = currentActivity.getWindow().getDecorView().findViewById(android.R.id.content);
+    //region Implementation
+    private void schedule(@Nullable final NativeViewHierarchyManager nativeViewHierarchyManager, @Nullable final View resolvedView) {
+        metrics.mark(CaptureMetrics.Stage.UI_WAIT);
+        tracer.beginSection(CaptureTracer.Section.EXECUTE);
+        try {
+            scheduler.execute(priority, new Runnable () {
+                @Override
+                public void run() {
+                    metrics.mark(CaptureMetrics.Stage.QUEUE_WAIT);
+                    if (isAborted()) {
+                        discardOutput();
+                        rejectAborted();
+                        return;
+                    }
 
-                        // For full screen captures, don't use our complex logic, use
-                        // simpler and more direct methods
-                        if (view != null) {
-                            captureScreenDirectly(view);
-                            return;
+                    try {
+                        final View view;
+
+                        if (tag == -1) {
+                            // Full screen capture requires special handling
+                            view = currentActivity.getWindow().getDecorView().findViewById(android.R.id.content);
+                            metrics.mark(CaptureMetrics.Stage.RESOLVE);
+
+                            // For full screen captures, don't use our complex logic, use
+                            // simpler and more direct methods
+                            if (view != null) {
+                                captureScreenDirectly(view);
+                                return;
+                            } else {
+                                Log.e(TAG, "No root view found for full screen capture");
+                                discardOutput();
+                                promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "No root view found for full screen capture");
+                                return;
+                            }
+                        } else if (resolvedView != null) {
+                            view = resolvedView;
                         } else {
-                            Log.e(TAG, "No root view found for full screen capture");
-                            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "No root view found for full screen capture");
-                            return;
+                            // Component/specific view capture
+                            view = nativeViewHierarchyManager.resolveView(tag);
                         }
-                    } else {
-                        // Component/specific view capture
-                        view = nativeViewHierarchyManager.resolveView(tag);
-                    }
+                        metrics.mark(CaptureMetrics.Stage.RESOLVE);
 
-                    if (view == null) {
-                        Log.e(TAG, "No view found with reactTag: " + tag, new AssertionError());
-                        promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "No view found with reactTag: " + tag);
-                        return;
-                    }
+                        if (view == null) {
+                            Log.e(TAG, "No view found with reactTag: " + tag, new AssertionError());
+                            discardOutput();
+                            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "No view found with reactTag: " + tag);
+                            return;
+                        }
 
-                    final ReusableByteArrayOutputStream stream = new ReusableByteArrayOutputStream(outputBuffer);
-                    stream.setSize(proposeSize(view));
-                    outputBuffer = stream.innerBuffer();
-
-                    if (Results.TEMP_FILE.equals(result) && Formats.RAW == format) {
-                        saveToRawFileOnDevice(view);
-                    } else if (Results.TEMP_FILE.equals(result) && Formats.RAW != format) {
-                        saveToTempFileOnDevice(view);
-                    } else if (Results.BASE_64.equals(result) || Results.ZIP_BASE_64.equals(result)) {
-                        saveToBase64String(view);
-                    } else if (Results.DATA_URI.equals(result)) {
-                        saveToDataUriString(view);
+                        if (Results.TEMP_FILE.equals(result) && Formats.RAW == format) {
+                            saveToRawFileOnDevice(view);
+                        } else if (Results.TEMP_FILE.equals(result) && Formats.RAW != format) {
+                            saveToTempFileOnDevice(view);
+                        } else if (Results.BASE_64.equals(result) || Results.ZIP_BASE_64.equals(result)) {
+                            saveToBase64String(view);
+                        } else if (Results.DATA_URI.equals(result)) {
+                            saveToDataUriString(view);
+                        } else if (Results.BLOB.equals(result) || Results.MEMORY.equals(result)) {
+                            saveToBuffer(view);
+                        }
+                    } catch (final Throwable ex) {
+                        Log.e(TAG, "Failed to capture view snapshot", ex);
+                        discardOutput();
+                        promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture view snapshot");
                     }
-                } catch (final Throwable ex) {
-                    Log.e(TAG, "Failed to capture view snapshot", ex);
-                    promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture view snapshot");
                 }
-            }
-        });
+            });
+        } catch (final RejectedExecutionException ex) {
+            Log.w(TAG, "Capture of view tag " + tag + " rejected: " + ex.getMessage());
+            discardOutput();
+            promise.reject(ERROR_CAPTURE_QUEUE_FULL, ex.getMessage());
+        } finally {
+            tracer.endSection();
+        }
     }
-    //endregion
 
-    //region Implementation
     private void saveToTempFileOnDevice(@NonNull final View view) throws IOException {
-        final FileOutputStream fos = new FileOutputStream(output);
-        captureView(view, fos);
-
-        promise.resolve(Uri.fromFile(output).toString());
+        // named by the hash of the bytes written, never read back
+        final HashingOutputStream fos = new HashingOutputStream(new FileOutputStream(output));
+        captureView(view, fos, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) {
+                resolveFile(fos.getHash());
+            }
+        });
     }
 
-    private void saveToRawFileOnDevice(@NonNull final View view) throws IOException {
-        final String uri = Uri.fromFile(output).toString();
-
-        final FileOutputStream fos = new FileOutputStream(output);
-        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(outputBuffer);
-        final Point size = captureView(view, os);
-
-        // in case of buffer grow that will be a new array with bigger size
-        outputBuffer = os.innerBuffer();
-        final int length = os.size();
-        final String resolution = String.format(Locale.US, "%d:%d|", size.x, size.y);
+    private void saveToRawFileOnDevice(@NonNull final View view) {
+        // pixels are copied straight into the mapped file, after the resolution header
+        final RawFileOutputStream os = new RawFileOutputStream(output);
+        captureView(view, os, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) {
+                resolveFile(os.getHash());
+            }
+        });
+    }
 
-        fos.write(resolution.getBytes(Charset.forName("US-ASCII")));
-        fos.write(outputBuffer, 0, length);
-        fos.close();
+    private void saveToDataUriString(@NonNull final View view) {
+        // correct the extension if JPG
+        final String imageFormat = "jpg".equals(extension) ? "jpeg" : extension;
+        final String prefix = "data:image/" + imageFormat + ";base64,";
+
+        if (Formats.RAW == format) {
+            final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(buffers.lease(proposeSize(view)));
+            captureView(view, os, new CaptureCallback() {
+                @Override
+                public void onCaptured(@NonNull final Point size) {
+                    final Base64StringOutputStream data = new Base64StringOutputStream(os.size(), prefix.length());
+                    data.append(prefix);
+                    data.write(os.innerBuffer(), 0, os.size());
+
+                    resolveResult(data.build());
+                }
+            });
+            return;
+        }
 
-        promise.resolve(uri);
+        // compressed image is Base64 encoded on the fly, after the inline prefix
+        final Base64StringOutputStream os = new Base64StringOutputStream(proposeSize(view), prefix.length());
+        os.append(prefix);
+        captureView(view, os, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) {
+                resolveResult(os.build());
+            }
+        });
     }
 
-    private void saveToDataUriString(@NonNull final View view) throws IOException {
-        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(outputBuffer);
-        captureView(view, os);
-
-        outputBuffer = os.innerBuffer();
-        final int length = os.size();
+    private void saveToBase64String(@NonNull final View view) {
+        final boolean isRaw = Formats.RAW == this.format;
+        final boolean isZippedBase64 = Results.ZIP_BASE_64.equals(this.result);
 
-        final String data = Base64.encodeToString(outputBuffer, 0, length, Base64.NO_WRAP);
+        if (!isRaw && !isZippedBase64) {
+            // compressed image is Base64 encoded on the fly
+            final Base64StringOutputStream os = new Base64StringOutputStream(proposeSize(view), 0);
+            captureView(view, os, new CaptureCallback() {
+                @Override
+                public void onCaptured(@NonNull final Point size) {
+                    resolveResult(os.build());
+                }
+            });
+            return;
+        }
 
-        // correct the extension if JPG
-        final String imageFormat = "jpg".equals(extension) ? "jpeg" : extension;
+        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(buffers.lease(proposeSize(view)));
+        captureView(view, os, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) throws IOException {
+                // in case of buffer grow that will be a new array with bigger size
+                final byte[] outputBuffer = os.innerBuffer();
+                final int length = os.size();
+                final String pixelFormat = rawPixelFormat;
+                final String header = isRaw ? RawFileOutputStream.header(size.x, size.y, pixelFormat) : "";
+
+                if (isZippedBase64) {
+                    // deflated size is unknown, the encoder grows if half of the input is not enough
+                    final Base64StringOutputStream data = new Base64StringOutputStream(length / 2, header.length());
+                    data.append(header);
+                    deflate(outputBuffer, length, data);
+
+                    resolveResult(data.build());
+                } else {
+                    final Base64StringOutputStream data = new Base64StringOutputStream(length, header.length());
+                    data.append(header);
+                    data.write(outputBuffer, 0, length);
 
-        promise.resolve("data:image/" + imageFormat + ";base64," + data);
+                    resolveResult(data.build());
+                }
+            }
+        });
     }
 
-    private void saveToBase64String(@NonNull final View view) throws IOException {
+    /**
+     * Encode into a pooled buffer, for results handed over as bytes.
+     */
+    private void saveToBuffer(@NonNull final View view) {
         final boolean isRaw = Formats.RAW == this.format;
-        final boolean isZippedBase64 = Results.ZIP_BASE_64.equals(this.result);
 
-        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(outputBuffer);
-        final Point size = captureView(view, os);
-
-        // in case of buffer grow that will be a new array with bigger size
-        outputBuffer = os.innerBuffer();
-        final int length = os.size();
-        final String resolution = String.format(Locale.US, "%d:%d|", size.x, size.y);
-        final String header = (isRaw ? resolution : "");
-        final String data;
-
-        if (isZippedBase64) {
-            final Deflater deflater = new Deflater();
-            deflater.setInput(outputBuffer, 0, length);
-            deflater.finish();
-
-            final ReusableByteArrayOutputStream zipped = new ReusableByteArrayOutputStream(new byte[32]);
-            byte[] buffer = new byte[1024];
-            while (!deflater.finished()) {
-                int count = deflater.deflate(buffer); // returns the generated code... index
-                zipped.write(buffer, 0, count);
+        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(buffers.lease(proposeSize(view)));
+        captureView(view, os, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) {
+                final String header = isRaw ? RawFileOutputStream.header(size.x, size.y, rawPixelFormat) : "";
+                resolveBytes(os.innerBuffer(), os.size(), header, mimeType(format));
             }
+        });
+    }
 
-            data = header + Base64.encodeToString(zipped.innerBuffer(), 0, zipped.size(), Base64.NO_WRAP);
+    /**
+     * zlib compress the buffer, on all cores when available.
+     */
+    private void deflate(@NonNull final byte[] buffer, final int length, @NonNull final OutputStream os) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            new ParallelDeflater(deflaters, zipLevel, zipStrategy).deflate(buffer, 0, length, os);
         } else {
-            data = header + Base64.encodeToString(outputBuffer, 0, length, Base64.NO_WRAP);
+            deflaters.deflate(buffer, 0, length, zipLevel, zipStrategy, os);
         }
+    }
 
-        promise.resolve(data);
+    /**
+     * Release the idle native compression resources.
+     */
+    public static void trimDeflaters() {
+        deflaters.clear();
     }
 
     @NonNull
@@ -387,23 +736,54 @@ public class ViewShot implements UIBlock {
     }
 
     /**
-     * Wrap {@link #captureViewImpl(View, OutputStream)} call and on end close output stream.
+     * Wrap {@link #captureViewImpl(View, OutputStream, CaptureCallback)} call, on end close output
+     * stream, pass the result to the callback and give the stream buffer back to the pool.
      */
-    private Point captureView(@NonNull final View view, @NonNull final OutputStream os) throws IOException {
-        try {
-            return captureViewImpl(view, os);
-        } finally {
-            os.close();
-        }
+    private void captureView(@NonNull final View view, @NonNull final OutputStream os, @NonNull final CaptureCallback callback) {
+        captureViewImpl(view, os, new CaptureCallback() {
+            @Override
+            public void onCaptured(@NonNull final Point size) {
+                try {
+                    tracer.beginSection(CaptureTracer.Section.WRITE);
+                    try {
+                        os.close();
+                    } finally {
+                        tracer.endSection();
+                    }
+                    metrics.mark(CaptureMetrics.Stage.WRITE);
+
+                    if (isAborted()) {
+                        discardOutput();
+                        rejectAborted();
+                        return;
+                    }
+
+                    if (frameSkipped) {
+                        discardOutput();
+                        promise.resolve(null);
+                        return;
+                    }
+
+                    callback.onCaptured(size);
+                } catch (final Throwable ex) {
+                    Log.e(TAG, "Failed to capture view snapshot", ex);
+                    promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture view snapshot");
+                } finally {
+                    releaseStream(os, size);
+                }
+            }
+        });
     }
 
     /**
-     * Screenshot a view and return the captured bitmap.
+     * Screenshot a view into the output stream and pass the screenshot resolution (Width * Height)
+     * to the callback. Asynchronous PixelCopy requests do not block the worker thread, the capture
+     * is resumed once the copy is done.
      *
      * @param view the view to capture
-     * @return screenshot resolution, Width * Height
      */
-    private Point captureViewImpl(@NonNull final View view, @NonNull final OutputStream os) {
+    private void captureViewImpl(@NonNull final View view, @NonNull final OutputStream os, @NonNull final CaptureCallback callback) {
+        tracer.beginSection(CaptureTracer.Section.CAPTURE);
         try {
         int w = view.getWidth();
         int h = view.getHeight();
@@ -453,18 +833,60 @@ public class ViewShot implements UIBlock {
                 }
             }
 
-            Point resolution = new Point(w, h);
-            Bitmap bitmap = null;
-            Canvas canvas = null;
+            metrics.mark(CaptureMetrics.Stage.MEASURE);
+            if (isAborted()) {
+                callback.onCaptured(new Point(w, h));
+                return;
+            }
+
+            renderConfig = resolveRenderConfig(view);
+            final Point resolution = new Point(w, h);
+            final Bitmap bitmap;
+            final Canvas canvas;
+
+            if (isTiledCandidate(view, w, h, os)) {
+                captureTiled(view, w, h, os, callback);
+                return;
+            }
+
+            if (incremental && isIncrementalCandidate(view, h)) {
+                final DirtyRegionTracker tracker = DirtyRegionTracker.obtain(tag, view, bitmaps);
+                final Bitmap retained = tracker.acquire(w, h, renderConfig);
+
+                if (retained != null) {
+                    final Capture capture = new Capture(view, retained, new Canvas(retained), resolution, os, callback);
+                    capture.tracker = tracker;
+
+                    try {
+                        redrawDirtyRegion(view, retained, tracker.takeDirtyRegion());
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error redrawing dirty region: " + e.getMessage(), e);
+                        captureViewOld(view, retained);
+                    }
+
+                    capture.renderSpecialChildren(0);
+                    return;
+                }
+                // another capture of the same view is in progress, render this one from scratch
+            }
+
+            // render thumbnails straight at the requested size, PixelCopy scales into the destination too
+            final Point outputSize = isScaledOutput(w, h) ? new Point(width, height) : resolution;
+            drawScaleX = outputSize.x / (float) w;
+            drawScaleY = outputSize.y / (float) h;
 
             try {
-                bitmap = getBitmapForScreenshot(w, h);
+                bitmap = getBitmapForScreenshot(outputSize.x, outputSize.y, renderConfig);
                 canvas = new Canvas(bitmap);
+                canvas.scale(drawScaleX, drawScaleY);
             } catch (Exception e) {
                 Log.e(TAG, "Error creating bitmap or canvas: " + e.getMessage(), e);
-                return resolution; // Return early with just the resolution
+                callback.onCaptured(outputSize); // Return early with just the resolution
+                return;
             }
 
+            final Capture capture = new Capture(view, bitmap, canvas, outputSize, os, callback);
+
             // Use a flag to track if we've already rendered the view
             boolean viewAlreadyRendered = false;
 
@@ -602,65 +1024,48 @@ public class ViewShot implements UIBlock {
                 }
                 else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && !(view instanceof SurfaceView)) {
                     // For Android O and above, use PixelCopy for better quality captures
-                    try {
-                        final Activity activity = currentActivity;
-                        if (activity != null) {
-                            final CountDownLatch latch = new CountDownLatch(1);
-                            final int[] result = new int[1];
+                    final Activity activity = currentActivity;
+                    if (activity != null) {
+                        try {
+                            final int[] viewLocation = new int[2];
+                            view.getLocationInWindow(viewLocation);
+                            final Rect rect = new Rect(
+                                viewLocation[0],
+                                viewLocation[1],
+                                viewLocation[0] + view.getWidth(),
+                                viewLocation[1] + view.getHeight()
+                            );
 
-                            try {
-                                final int[] viewLocation = new int[2];
-                                view.getLocationInWindow(viewLocation);
-                                final Rect rect = new Rect(
-                                    viewLocation[0],
-                                    viewLocation[1],
-                                    viewLocation[0] + view.getWidth(),
-                                    viewLocation[1] + view.getHeight()
-                                );
-
-                                PixelCopy.request(
-                                    activity.getWindow(),
-                                    rect,
-                                    bitmap,
-                                    copyResult -> {
-                                        result[0] = copyResult;
-                                        latch.countDown();
-                                    },
-                                    new Handler(Looper.getMainLooper())
-                                );
-
-                                // Wait for the pixel copy to complete
-                                latch.await(SURFACE_VIEW_READ_PIXELS_TIMEOUT, TimeUnit.SECONDS);
-
-                                if (result[0] != PixelCopy.SUCCESS) {
-                                    Log.e(TAG, "PixelCopy failed with error: " + result[0]);
-                                    try {
-                                        captureViewOld(view, bitmap);
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error in fallback captureViewOld after PixelCopy failure: " + e.getMessage(), e);
+                            // the capture continues from the PixelCopy callback
+                            requestPixelCopy(activity.getWindow(), rect, bitmap, new OnPixelCopied() {
+                                @Override
+                                public void onPixelCopied(final int copyResult) {
+                                    if (copyResult != PixelCopy.SUCCESS && !isAborted()) {
+                                        Log.e(TAG, "PixelCopy failed with error: " + copyResult);
+                                        try {
+                                            captureViewOld(view, bitmap);
+                                        } catch (Exception e) {
+                                            Log.e(TAG, "Error in fallback captureViewOld after PixelCopy failure: " + e.getMessage(), e);
+                                        }
                                     }
+
+                                    capture.renderSpecialChildren(0);
                                 }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error using PixelCopy: " + e.getMessage(), e);
-                                try {
-                                    captureViewOld(view, bitmap);
-                                } catch (Exception inner) {
-                                    Log.e(TAG, "Error in fallback captureViewOld after PixelCopy error: " + inner.getMessage(), inner);
-                                }
-                            }
-                        } else {
+                            });
+                            return;
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error with PixelCopy: " + e.getMessage(), e);
                             try {
                                 captureViewOld(view, bitmap);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error in captureViewOld when activity is null: " + e.getMessage(), e);
+                            } catch (Exception inner) {
+                                Log.e(TAG, "Error in fallback captureViewOld: " + inner.getMessage(), inner);
                             }
                         }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error with PixelCopy: " + e.getMessage(), e);
+                    } else {
                         try {
                             captureViewOld(view, bitmap);
-                        } catch (Exception inner) {
-                            Log.e(TAG, "Error in fallback captureViewOld: " + inner.getMessage(), inner);
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error in captureViewOld when activity is null: " + e.getMessage(), e);
                         }
                     }
                 } else {
@@ -673,206 +1078,267 @@ public class ViewShot implements UIBlock {
                 }
             }
 
-            // Process special children (TextureView, SurfaceView)
+            capture.renderSpecialChildren(0);
+        } catch (Exception e) {
+            Log.e(TAG, "Fatal error taking screenshot: " + e.getMessage(), e);
+            // Return a default resolution in case of complete failure
             try {
-        final Paint paint = new Paint();
-        paint.setAntiAlias(true);
-        paint.setFilterBitmap(true);
-        paint.setDither(true);
+                callback.onCaptured(new Point(0, 0));
+            } catch (IOException ignored) {
+                // the callback reports its own failures
+            }
+        } finally {
+            tracer.endSection();
+        }
+    }
 
-                // Process children that need special handling
-        final List<View> childrenList = getAllChildren(view);
+    /**
+     * Incremental captures are drawn in software from the view itself, full screen, content
+     * container and tall ViewGroup captures always render from scratch.
+     */
+    private boolean isIncrementalCandidate(@NonNull final View view, final int height) {
+        if (tag == -1 || view instanceof SurfaceView) return false;
+        if (snapshotContentContainer && view instanceof ScrollView) return false;
 
-        for (final View child : childrenList) {
-                    // Skip the root view as it's already been drawn
-                    if (child == view) continue;
+        return !(view instanceof ViewGroup && height > view.getHeight());
+    }
 
-                    // Only process TextureView and SurfaceView - the rest are handled by captureView
-            if (child instanceof TextureView) {
-                        try {
-                // skip all invisible to user child views
-                if (child.getVisibility() != VISIBLE) continue;
+    /**
+     * Redraw the changed areas of the view into its retained capture, clipped so that untouched
+     * children are quickly rejected.
+     *
+     * @param region changed areas, null to redraw everything
+     */
+    private void redrawDirtyRegion(@NonNull final View view, @NonNull final Bitmap bitmap, @Nullable final Region region) {
+        if (region == null) {
+            captureViewOld(view, bitmap);
+            return;
+        }
 
-                final TextureView tvChild = (TextureView) child;
-                tvChild.setOpaque(false); // <-- switch off background fill
+        final List<Rect> rects = new ArrayList<>();
+        final RegionIterator it = new RegionIterator(region);
+        Rect rect = new Rect();
+        while (it.next(rect)) {
+            rects.add(rect);
+            rect = new Rect();
+        }
 
-                            Bitmap childBitmapBuffer = null;
-                            try {
-                                childBitmapBuffer = tvChild.getBitmap(getExactBitmapForScreenshot(child.getWidth(), child.getHeight()));
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error getting TextureView bitmap: " + e.getMessage(), e);
-                                continue;
-                            }
+        if (rects.isEmpty()) {
+            Log.d(TAG, "Nothing changed since the last capture of view tag " + tag);
+            return;
+        }
 
-                            if (childBitmapBuffer != null) {
-                                try {
-                                    final int countCanvasSave = canvas.save();
-                                    applyTransformations(canvas, view, child);
-                                    canvas.drawBitmap(childBitmapBuffer, 0, 0, paint);
-                                    canvas.restoreToCount(countCanvasSave);
-                recycleBitmap(childBitmapBuffer);
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error drawing TextureView bitmap: " + e.getMessage(), e);
-                                    recycleBitmap(childBitmapBuffer);
-                                }
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing TextureView: " + e.getMessage(), e);
-                        }
-            } else if (child instanceof SurfaceView && handleGLSurfaceView) {
-                        try {
-                final SurfaceView svChild = (SurfaceView)child;
-                final CountDownLatch latch = new CountDownLatch(1);
-                            final View finalView = view;
-                            final View finalChild = child;
-                            final Paint finalPaint = paint;
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-                                Bitmap childBitmapBuffer = null;
-                                try {
-                                    childBitmapBuffer = getExactBitmapForScreenshot(child.getWidth(), child.getHeight());
-                                    final Bitmap finalChildBitmapBuffer = childBitmapBuffer;
-                                    final Canvas finalCanvas = canvas;
+        // each rectangle is a full tree traversal, merge fragmented regions
+        if (rects.size() > MAX_DIRTY_RECTS) {
+            rects.clear();
+            rects.add(region.getBounds());
+        }
 
-                                    PixelCopy.request(svChild, childBitmapBuffer, result -> {
-                                        try {
-                                            final int countCanvasSave = finalCanvas.save();
-                                            applyTransformations(finalCanvas, finalView, finalChild);
-                                            finalCanvas.drawBitmap(finalChildBitmapBuffer, 0, 0, finalPaint);
-                                            finalCanvas.restoreToCount(countCanvasSave);
-                                        } catch (Exception e) {
-                                            Log.e(TAG, "Error drawing SurfaceView bitmap: " + e.getMessage(), e);
-                                        } finally {
-                                            recycleBitmap(finalChildBitmapBuffer);
-                                latch.countDown();
-                            }
-                        }, new Handler(Looper.getMainLooper()));
+        final Canvas canvas = new Canvas(bitmap);
+        for (final Rect dirtyRect : rects) {
+            final int saveCount = canvas.save();
+            canvas.clipRect(dirtyRect);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            drawViewWithBackground(view, canvas);
+            canvas.restoreToCount(saveCount);
+        }
+    }
 
-                                    try {
-                        latch.await(SURFACE_VIEW_READ_PIXELS_TIMEOUT, TimeUnit.SECONDS);
-                                    } catch (InterruptedException e) {
-                                        Log.e(TAG, "Interrupted waiting for SurfaceView PixelCopy: " + e.getMessage(), e);
-                                    }
-                    } catch (Exception e) {
-                                    Log.e(TAG, "Cannot PixelCopy for " + svChild + ": " + e.getMessage(), e);
-                                    if (childBitmapBuffer != null) {
-                                        recycleBitmap(childBitmapBuffer);
-                                    }
-                    }
-                } else {
-                                try {
-                    Bitmap cache = svChild.getDrawingCache();
-                    if (cache != null) {
-                                        canvas.drawBitmap(svChild.getDrawingCache(), 0, 0, paint);
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error drawing SurfaceView drawing cache: " + e.getMessage(), e);
-                                }
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing SurfaceView: " + e.getMessage(), e);
-                        }
+    /**
+     * Tall content (ScrollView content container, ViewGroup taller than its bounds) too big for a
+     * single bitmap is rendered in tiles. Only PNG and RAW outputs can be written row by row.
+     */
+    private boolean isTiledCandidate(@NonNull final View view, final int w, final int h, @NonNull final OutputStream os) {
+        if ((long) w * h * bytesPerPixel(renderConfig) <= TILED_THRESHOLD_BYTES) return false;
+        if (width != null || height != null) return false;
+        if (Formats.PNG != format && !(Formats.RAW == format && isRawOutput(os))) return false;
+
+        final boolean isScrollContent = snapshotContentContainer && view instanceof ScrollView
+                && ((ScrollView) view).getChildCount() > 0;
+        final boolean isTallGroup = !(snapshotContentContainer && view instanceof ScrollView)
+                && view instanceof ViewGroup && h > view.getHeight();
+        if (!isScrollContent && !isTallGroup) return false;
+
+        // SurfaceView content is only available through asynchronous full size copies
+        if (handleGLSurfaceView) {
+            for (final View child : getAllChildren(view)) {
+                if (child instanceof SurfaceView) return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Render tall content in horizontal strips into a reused tile bitmap and stream them to the
+     * encoder, so peak memory is bounded by the tile size instead of the content height.
+     */
+    private void captureTiled(@NonNull final View view, final int w, final int h, @NonNull final OutputStream os, @NonNull final CaptureCallback callback) throws IOException {
+        final int tileHeight = Math.min(h, Math.max(MIN_TILE_HEIGHT, TILE_BYTES / (w * bytesPerPixel(renderConfig))));
+        Log.d(TAG, "Tiled capture of " + w + "x" + h + " in tiles of " + tileHeight + " rows");
+
+        final boolean isRaw = Formats.RAW == format;
+        final boolean grayscale = isGrayscale();
+        final int rawSize = w * h * rawBytesPerPixel();
+        final ScrollView scrollView = snapshotContentContainer && view instanceof ScrollView ? (ScrollView) view : null;
+        final int originalScrollY = scrollView != null ? scrollView.getScrollY() : 0;
+        final List<Pair<TextureView, Bitmap>> textures = new ArrayList<>();
+        final Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setFilterBitmap(true);
+        paint.setDither(true);
+
+        Bitmap tile = null;
+        Bitmap lastTile = null;
+        PngStreamWriter png = null;
+
+        try {
+            // texture content is the same for all tiles, grab it once
+            for (final View child : getAllChildren(view)) {
+                if (child instanceof TextureView && child != view && child.getVisibility() == VISIBLE) {
+                    final TextureView tvChild = (TextureView) child;
+                    tvChild.setOpaque(false);
+                    final Bitmap childBitmap = tvChild.getBitmap(getExactBitmapForScreenshot(child.getWidth(), child.getHeight()));
+                    if (childBitmap != null) {
+                        textures.add(new Pair<>(tvChild, childBitmap));
                     }
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing special views: " + e.getMessage(), e);
             }
 
-            // Handle scaling if needed
-            try {
-        if (width != null && height != null && (width != w || height != h)) {
-                    try {
-            final Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
-            recycleBitmap(bitmap);
-                        bitmap = null; // Prevent duplicate recycling
+            final ByteBuffer rawTarget;
+            if (!isRaw) {
+                rawTarget = null;
+                png = new PngStreamWriter(os, w, h, Deflater.DEFAULT_COMPRESSION, grayscale);
+            } else if (os instanceof RawFileOutputStream) {
+                rawTarget = ((RawFileOutputStream) os).mapPixels(w, h, rawBytesPerPixel(), rawPixelFormat());
+            } else {
+                rawTarget = ((ReusableByteArrayOutputStream) os).asBuffer(rawSize);
+            }
+            rawPixelFormat = rawPixelFormat();
 
-                        // Use the scaled bitmap for output
-                        if (Formats.RAW == this.format && os instanceof ReusableByteArrayOutputStream) {
-                            try {
-                                final int total = width * height * ARGB_SIZE;
-                                final ReusableByteArrayOutputStream rbaos = cast(os);
-                                scaledBitmap.copyPixelsToBuffer(rbaos.asBuffer(total));
-                                rbaos.setSize(total);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error copying scaled bitmap pixels to buffer: " + e.getMessage(), e);
-                                // Try compression as fallback
-                                try {
-                                    final Bitmap.CompressFormat cf = Formats.mapping[this.format];
-                                    scaledBitmap.compress(cf, (int) (100.0 * quality), os);
-                                } catch (Exception inner) {
-                                    Log.e(TAG, "Error compressing scaled bitmap: " + inner.getMessage(), inner);
-                                }
-                            }
-                        } else {
-                            try {
-                                final Bitmap.CompressFormat cf = Formats.mapping[this.format];
-                                scaledBitmap.compress(cf, (int) (100.0 * quality), os);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error compressing scaled bitmap: " + e.getMessage(), e);
-                            }
-                        }
+            if (scrollView != null) {
+                scrollView.setScrollY(0);
+            }
 
-                        recycleBitmap(scaledBitmap);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error scaling bitmap: " + e.getMessage(), e);
-                        // Use original bitmap if scaling fails
-                        if (bitmap != null) {
-                            try {
-                                final Bitmap.CompressFormat cf = Formats.mapping[this.format];
-                                bitmap.compress(cf, (int) (100.0 * quality), os);
-                            } catch (Exception inner) {
-                                Log.e(TAG, "Error compressing original bitmap after scaling failure: " + inner.getMessage(), inner);
-                            }
-                            recycleBitmap(bitmap);
-                            bitmap = null;
-                        }
+            tile = getBitmapForScreenshot(w, tileHeight, renderConfig);
+            final ImageHasher tileHasher = contentHash || perceptualHash
+                    ? new ImageHasher(w, h, contentHash, perceptualHash)
+                    : null;
+            final int[] rows = isRaw && !grayscale && tileHasher == null ? null : new int[w * tileHeight];
+
+            for (int y = 0; y < h && !isAborted(); y += tileHeight) {
+                final int rowCount = Math.min(tileHeight, h - y);
+                if (rowCount < tileHeight && lastTile == null) {
+                    lastTile = getBitmapForScreenshot(w, rowCount, renderConfig);
+                }
+                final Bitmap target = rowCount < tileHeight ? lastTile : tile;
+                target.eraseColor(Color.TRANSPARENT);
+
+                final Canvas canvas = new Canvas(target);
+                canvas.translate(0, -y);
+                drawTallContent(view, canvas, w, h);
+
+                for (final Pair<TextureView, Bitmap> texture : textures) {
+                    final int countCanvasSave = canvas.save();
+                    applyTransformations(canvas, view, texture.first);
+                    canvas.drawBitmap(texture.second, 0, 0, paint);
+                    canvas.restoreToCount(countCanvasSave);
+                }
+                metrics.mark(CaptureMetrics.Stage.DRAW);
+
+                tracer.beginSection(CaptureTracer.Section.COMPRESS);
+                try {
+                    if (rows != null) {
+                        target.getPixels(rows, 0, w, 0, 0, w, rowCount);
+                    }
+                    if (tileHasher != null) {
+                        tileHasher.update(rows, 0, rowCount);
                     }
-                } else {
-                    // Use the original bitmap for output
-                    if (bitmap != null) {
-        if (Formats.RAW == this.format && os instanceof ReusableByteArrayOutputStream) {
-                            try {
-            final int total = w * h * ARGB_SIZE;
-            final ReusableByteArrayOutputStream rbaos = cast(os);
-            bitmap.copyPixelsToBuffer(rbaos.asBuffer(total));
-            rbaos.setSize(total);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error copying bitmap pixels to buffer: " + e.getMessage(), e);
-                                // Try compression as fallback
-                                try {
-                                    final Bitmap.CompressFormat cf = Formats.mapping[this.format];
-                                    bitmap.compress(cf, (int) (100.0 * quality), os);
-                                } catch (Exception inner) {
-                                    Log.e(TAG, "Error compressing bitmap in fallback: " + inner.getMessage(), inner);
-                                }
-                            }
-        } else {
-                            try {
-            final Bitmap.CompressFormat cf = Formats.mapping[this.format];
-            bitmap.compress(cf, (int) (100.0 * quality), os);
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error compressing bitmap: " + e.getMessage(), e);
-                            }
-        }
 
-        recycleBitmap(bitmap);
-                        bitmap = null;
+                    if (isRaw && grayscale) {
+                        putLuma(rows, w * rowCount, rawTarget);
+                    } else if (isRaw) {
+                        // the buffer position moves forward, tiles land one after the other
+                        target.copyPixelsToBuffer(rawTarget);
+                    } else {
+                        png.writeRows(rows, 0, w, rowCount);
                     }
+                } finally {
+                    tracer.endSection();
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error in bitmap output handling: " + e.getMessage(), e);
-                // Try to clean up resources
-                if (bitmap != null) {
-                    recycleBitmap(bitmap);
+                metrics.mark(CaptureMetrics.Stage.ENCODE);
+            }
+            hasher = tileHasher;
+
+            if (isAborted()) {
+                // the capture wrapper rejects, the partial output is deleted
+                Log.d(TAG, "Tiled capture abandoned");
+            } else if (png != null) {
+                png.finish();
+            } else if (os instanceof ReusableByteArrayOutputStream) {
+                ((ReusableByteArrayOutputStream) os).setSize(rawSize);
+            }
+        } finally {
+            if (png != null) {
+                png.abort();
+            }
+            if (scrollView != null) {
+                try {
+                    scrollView.setScrollY(originalScrollY);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error restoring scroll position: " + e.getMessage(), e);
+                }
+            }
+            recycleBitmap(tile);
+            recycleBitmap(lastTile);
+            for (final Pair<TextureView, Bitmap> texture : textures) {
+                recycleBitmap(texture.second);
+            }
+        }
+
+        callback.onCaptured(new Point(w, h));
+    }
+
+    /**
+     * Draw tall content the same way as the single bitmap path, the canvas may be translated to
+     * render any part of it.
+     */
+    private void drawTallContent(@NonNull final View view, @NonNull final Canvas canvas, final int w, final int h) {
+        if (snapshotContentContainer && view instanceof ScrollView) {
+            final ScrollView scrollView = (ScrollView) view;
+            final View content = scrollView.getChildAt(0);
+
+            canvas.drawColor(Color.WHITE);
+            final int saveCount = canvas.save();
+            canvas.translate(scrollView.getPaddingLeft(), scrollView.getPaddingTop());
+            try {
+                if (content instanceof ViewGroup) {
+                    // Clear the background first to avoid double-drawing
+                    final Drawable bg = content.getBackground();
+                    content.setBackground(null);
+                    content.draw(canvas);
+                    content.setBackground(bg);
+                } else {
+                    content.draw(canvas);
                 }
+            } catch (Exception e) {
+                Log.e(TAG, "Error drawing ScrollView content tile: " + e.getMessage(), e);
             }
+            canvas.restoreToCount(saveCount);
+            return;
+        }
 
-        return resolution; // return image width and height
+        try {
+            final Drawable background = view.getBackground();
+            if (background != null) {
+                background.setBounds(0, 0, w, h);
+                background.draw(canvas);
+            }
         } catch (Exception e) {
-            Log.e(TAG, "Fatal error taking screenshot: " + e.getMessage(), e);
-            // Return a default resolution in case of complete failure
-            return new Point(0, 0);
+            Log.e(TAG, "Error drawing ViewGroup background tile: " + e.getMessage(), e);
         }
+
+        captureViewGroupContent((ViewGroup) view, canvas, w, h);
     }
 
     /**
@@ -1074,142 +1540,900 @@ public class ViewShot implements UIBlock {
         return transform;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <T extends A, A> T cast(final A instance) {
-        return (T) instance;
-    }
-    //endregion
-
-    //region Cache re-usable bitmaps
-    /**
-     * Synchronization guard.
-     */
-    private static final Object guardBitmaps = new Object();
-    /**
-     * Reusable bitmaps for screenshots.
-     */
-    private static final Set<Bitmap> weakBitmaps = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
-
-    /**
-     * Propose allocation size of the array output stream.
-     */
-    private static int proposeSize(@NonNull final View view) {
-        final int w = view.getWidth();
-        final int h = view.getHeight();
-
-        return Math.min(w * h * ARGB_SIZE, 32);
-    }
-
     /**
-     * Return bitmap to set of available.
+     * State of a view capture, carried over the asynchronous PixelCopy stages.
      */
-    private static void recycleBitmap(@Nullable final Bitmap bitmap) {
-        if (bitmap == null) return;
-
-        synchronized (guardBitmaps) {
-            weakBitmaps.add(bitmap);
-        }
-    }
-
-    /**
-     * Try to find a bitmap for screenshot in reusable set and if not found create a new one.
-     */
-    @NonNull
-    private static Bitmap getBitmapForScreenshot(final int width, final int height) {
-        synchronized (guardBitmaps) {
-            for (final Bitmap bmp : weakBitmaps) {
-                if (bmp.getWidth() == width && bmp.getHeight() == height) {
-                    weakBitmaps.remove(bmp);
-                    bmp.eraseColor(Color.TRANSPARENT);
-                    return bmp;
-                }
-            }
+    private final class Capture {
+        private final View view;
+        private final Bitmap bitmap;
+        private final Canvas canvas;
+        private final Point resolution;
+        private final OutputStream os;
+        private final CaptureCallback callback;
+        private final Paint paint = new Paint();
+        private List<View> childrenList;
+        /**
+         * Set when the bitmap is the retained capture of an incremental capture.
+         */
+        @Nullable
+        private DirtyRegionTracker tracker;
+
+        private Capture(
+                @NonNull final View view,
+                @NonNull final Bitmap bitmap,
+                @NonNull final Canvas canvas,
+                @NonNull final Point resolution,
+                @NonNull final OutputStream os,
+                @NonNull final CaptureCallback callback) {
+            this.view = view;
+            this.bitmap = bitmap;
+            this.canvas = canvas;
+            this.resolution = resolution;
+            this.os = os;
+            this.callback = callback;
         }
 
-        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-    }
+        /**
+         * Draw children that need special handling (TextureView, SurfaceView), starting at the
+         * given index of the children list. Continues with {@link #encode()} once all are drawn.
+         */
+        private void renderSpecialChildren(final int from) {
+            try {
+                if (childrenList == null) {
+                    paint.setAntiAlias(true);
+                    paint.setFilterBitmap(true);
+                    paint.setDither(true);
 
-    /**
-     * Try to find a bitmap with exact width and height for screenshot in reusable set and if
-     * not found create a new one.
-     */
-    @NonNull
-    private static Bitmap getExactBitmapForScreenshot(final int width, final int height) {
-        synchronized (guardBitmaps) {
-            for (final Bitmap bmp : weakBitmaps) {
-                if (bmp.getWidth() == width && bmp.getHeight() == height) {
-                    weakBitmaps.remove(bmp);
-                    bmp.eraseColor(Color.TRANSPARENT);
-                    return bmp;
+                    // Process children that need special handling
+                    childrenList = getAllChildren(view);
                 }
-            }
-        }
-
-        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-    }
-    //endregion
 
-    //region Nested declarations
-
-    /**
-     * Stream that can re-use pre-allocated buffer.
-     */
-    @SuppressWarnings("WeakerAccess")
-    public static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
-        private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
-
-        public ReusableByteArrayOutputStream(@NonNull final byte[] buffer) {
-            super(0);
+                for (int i = from; i < childrenList.size() && !isAborted(); i++) {
+                    final View child = childrenList.get(i);
 
-            this.buf = buffer;
-        }
+                    // Skip the root view as it's already been drawn
+                    if (child == view) continue;
 
-        /**
-         * Get access to inner buffer without any memory copy operations.
-         */
-        public byte[] innerBuffer() {
-            return this.buf;
-        }
+                    // Only process TextureView and SurfaceView - the rest are handled by captureView
+                    if (child instanceof TextureView) {
+                        try {
+                            // skip all invisible to user child views
+                            if (child.getVisibility() != VISIBLE) continue;
 
-        @NonNull
-        public ByteBuffer asBuffer(final int size) {
-            if (this.buf.length < size) {
-                grow(size);
-            }
+                            final TextureView tvChild = (TextureView) child;
+                            tvChild.setOpaque(false); // <-- switch off background fill
 
-            return ByteBuffer.wrap(this.buf);
-        }
+                            Bitmap childBitmapBuffer = null;
+                            try {
+                                childBitmapBuffer = tvChild.getBitmap(getExactBitmapForScreenshot(child.getWidth(), child.getHeight()));
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error getting TextureView bitmap: " + e.getMessage(), e);
+                                continue;
+                            }
 
-        public void setSize(final int size) {
-            this.count = size;
-        }
+                            if (childBitmapBuffer != null) {
+                                try {
+                                    final int countCanvasSave = canvas.save();
+                                    applyTransformations(canvas, view, child);
+                                    canvas.drawBitmap(childBitmapBuffer, 0, 0, paint);
+                                    canvas.restoreToCount(countCanvasSave);
+                                    recycleBitmap(childBitmapBuffer);
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Error drawing TextureView bitmap: " + e.getMessage(), e);
+                                    recycleBitmap(childBitmapBuffer);
+                                }
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error processing TextureView: " + e.getMessage(), e);
+                        }
+                    } else if (child instanceof SurfaceView && handleGLSurfaceView) {
+                        try {
+                            final SurfaceView svChild = (SurfaceView) child;
 
-        /**
-         * Increases the capacity to ensure that it can hold at least the
-         * number of elements specified by the minimum capacity argument.
-         *
-         * @param minCapacity the desired minimum capacity
-         */
-        protected void grow(int minCapacity) {
-            // overflow-conscious code
-            int oldCapacity = buf.length;
-            int newCapacity = oldCapacity << 1;
-            if (newCapacity - minCapacity < 0)
-                newCapacity = minCapacity;
-            if (newCapacity - MAX_ARRAY_SIZE > 0)
-                newCapacity = hugeCapacity(minCapacity);
-            buf = Arrays.copyOf(buf, newCapacity);
-        }
+                            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                                final Bitmap childBitmapBuffer = getExactBitmapForScreenshot(child.getWidth(), child.getHeight());
+                                final int next = i + 1;
 
-        protected static int hugeCapacity(int minCapacity) {
-            if (minCapacity < 0) // overflow
-                throw new OutOfMemoryError();
+                                // the remaining children are processed from the PixelCopy callback
+                                requestPixelCopy(svChild, childBitmapBuffer, new OnPixelCopied() {
+                                    @Override
+                                    public void onPixelCopied(final int copyResult) {
+                                        try {
+                                            // a failed or abandoned copy leaves the buffer unfinished
+                                            if (copyResult == PixelCopy.SUCCESS) {
+                                                final int countCanvasSave = canvas.save();
+                                                applyTransformations(canvas, view, child);
+                                                canvas.drawBitmap(childBitmapBuffer, 0, 0, paint);
+                                                canvas.restoreToCount(countCanvasSave);
+                                            }
+                                        } catch (Exception e) {
+                                            Log.e(TAG, "Error drawing SurfaceView bitmap: " + e.getMessage(), e);
+                                        } finally {
+                                            recycleBitmap(childBitmapBuffer);
+                                        }
 
-            return (minCapacity > MAX_ARRAY_SIZE) ?
-                    Integer.MAX_VALUE :
-                    MAX_ARRAY_SIZE;
-        }
+                                        renderSpecialChildren(next);
+                                    }
+                                });
+                                return;
+                            } else {
+                                try {
+                                    Bitmap cache = svChild.getDrawingCache();
+                                    if (cache != null) {
+                                        canvas.drawBitmap(svChild.getDrawingCache(), 0, 0, paint);
+                                    }
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Error drawing SurfaceView drawing cache: " + e.getMessage(), e);
+                                }
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error processing SurfaceView: " + e.getMessage(), e);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing special views: " + e.getMessage(), e);
+            }
+
+            encode();
+        }
+
+        /**
+         * Scale the bitmap if needed, write it to the output stream and hand over to the callback.
+         */
+        private void encode() {
+            final int w = resolution.x;
+            final int h = resolution.y;
+            Bitmap bitmap = this.bitmap;
+
+            if (isAborted()) {
+                // nothing is encoded, the capture wrapper rejects
+                releaseBitmap(bitmap);
+                try {
+                    callback.onCaptured(resolution);
+                } catch (IOException ignored) {
+                    // the callback reports its own failures
+                }
+                return;
+            }
+
+            if (frameFilter != null && !frameFilter.accept(bitmap)) {
+                releaseBitmap(bitmap);
+                frameSkipped = true;
+
+                try {
+                    callback.onCaptured(resolution);
+                } catch (IOException ignored) {
+                    // the callback reports its own failures
+                }
+                return;
+            }
+
+            // Handle scaling if needed
+            try {
+        if (width != null && height != null && (width != w || height != h)) {
+                    try {
+            final Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            releaseBitmap(bitmap);
+                        bitmap = null; // Prevent duplicate recycling
+
+                        // Use the scaled bitmap for output
+                        if (Formats.RAW == format && isRawOutput(os)) {
+                            try {
+                                copyRawPixels(scaledBitmap, width, height);
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error copying scaled bitmap pixels to buffer: " + e.getMessage(), e);
+                                // Try compression as fallback
+                                try {
+                                    compress(scaledBitmap, Formats.mapping[format], os);
+                                } catch (Exception inner) {
+                                    Log.e(TAG, "Error compressing scaled bitmap: " + inner.getMessage(), inner);
+                                }
+                            }
+                        } else {
+                            try {
+                                compress(scaledBitmap, Formats.mapping[format], os);
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error compressing scaled bitmap: " + e.getMessage(), e);
+                            }
+                        }
+
+                        recycleBitmap(scaledBitmap);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error scaling bitmap: " + e.getMessage(), e);
+                        // Use original bitmap if scaling fails
+                        if (bitmap != null) {
+                            try {
+                                compress(bitmap, Formats.mapping[format], os);
+                            } catch (Exception inner) {
+                                Log.e(TAG, "Error compressing original bitmap after scaling failure: " + inner.getMessage(), inner);
+                            }
+                            releaseBitmap(bitmap);
+                            bitmap = null;
+                        }
+                    }
+                } else {
+                    // Use the original bitmap for output
+                    if (bitmap != null) {
+        if (Formats.RAW == format && isRawOutput(os)) {
+                            try {
+            copyRawPixels(bitmap, w, h);
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error copying bitmap pixels to buffer: " + e.getMessage(), e);
+                                // Try compression as fallback
+                                try {
+                                    compress(bitmap, Formats.mapping[format], os);
+                                } catch (Exception inner) {
+                                    Log.e(TAG, "Error compressing bitmap in fallback: " + inner.getMessage(), inner);
+                                }
+                            }
+        } else {
+                            try {
+            compress(bitmap, Formats.mapping[format], os);
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error compressing bitmap: " + e.getMessage(), e);
+                            }
+        }
+
+        releaseBitmap(bitmap);
+                        bitmap = null;
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error in bitmap output handling: " + e.getMessage(), e);
+                // Try to clean up resources
+                if (bitmap != null) {
+                    releaseBitmap(bitmap);
+                }
+            }
+
+            try {
+                callback.onCaptured(resolution); // return image width and height
+            } catch (IOException ignored) {
+                // the callback reports its own failures
+            }
+        }
+
+        /**
+         * Give the captured bitmap back, the retained bitmap of an incremental capture is kept.
+         */
+        private void releaseBitmap(@NonNull final Bitmap bitmap) {
+            if (tracker != null && bitmap == this.bitmap) {
+                tracker.release();
+            } else {
+                recycleBitmap(bitmap);
+            }
+        }
+
+        /**
+         * Copy uncompressed pixels into the output, either the pooled byte buffer or the mapped file.
+         */
+        private void copyRawPixels(@NonNull final Bitmap bitmap, final int w, final int h) throws IOException {
+            metrics.mark(CaptureMetrics.Stage.DRAW);
+            tracer.beginSection(CaptureTracer.Section.COMPRESS);
+            try {
+                hashPixels(bitmap);
+
+                final int total = w * h * rawBytesPerPixel();
+                final ByteBuffer target = os instanceof RawFileOutputStream
+                        ? ((RawFileOutputStream) os).mapPixels(w, h, rawBytesPerPixel(), rawPixelFormat())
+                        : ((ReusableByteArrayOutputStream) os).asBuffer(total);
+                rawPixelFormat = rawPixelFormat();
+
+                if (isGrayscale()) {
+                    final int[] row = new int[w];
+                    for (int y = 0; y < h; y++) {
+                        bitmap.getPixels(row, 0, w, 0, y, w, 1);
+                        putLuma(row, w, target);
+                    }
+                } else {
+                    bitmap.copyPixelsToBuffer(target);
+                }
+
+                if (os instanceof ReusableByteArrayOutputStream) {
+                    ((ReusableByteArrayOutputStream) os).setSize(total);
+                }
+            } finally {
+                tracer.endSection();
+            }
+            metrics.mark(CaptureMetrics.Stage.ENCODE);
+        }
+    }
+
+    /**
+     * Bitmap configuration of the capture of the view. Grayscale is rendered in color and reduced
+     * to luma while encoding, drawing into an ALPHA_8 bitmap would only keep the coverage.
+     */
+    @NonNull
+    private Bitmap.Config resolveRenderConfig(@NonNull final View view) {
+        if (BitmapConfigs.RGB_565.equals(bitmapConfig)) return Bitmap.Config.RGB_565;
+        if (BitmapConfigs.AUTO.equals(bitmapConfig) && isOpaque(view)) return Bitmap.Config.RGB_565;
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Whether the capture has no transparent pixel, content containers are drawn over white.
+     */
+    private boolean isOpaque(@NonNull final View view) {
+        if (snapshotContentContainer && view instanceof ScrollView && ((ScrollView) view).getChildCount() > 0) {
+            return true;
+        }
+        if (view.isOpaque()) return true;
+
+        final Drawable background = view.getBackground();
+        return background != null && background.getOpacity() == PixelFormat.OPAQUE;
+    }
+
+    private boolean isGrayscale() {
+        return BitmapConfigs.GRAYSCALE.equals(bitmapConfig);
+    }
+
+    private int rawBytesPerPixel() {
+        return isGrayscale() ? 1 : bytesPerPixel(renderConfig);
+    }
+
+    /**
+     * Pixel format in the header of RAW outputs, null for ARGB.
+     */
+    @Nullable
+    private String rawPixelFormat() {
+        if (isGrayscale()) return BitmapConfigs.GRAYSCALE;
+        return Bitmap.Config.RGB_565 == renderConfig ? BitmapConfigs.RGB_565 : null;
+    }
+
+    private static int bytesPerPixel(@NonNull final Bitmap.Config config) {
+        return Bitmap.Config.RGB_565 == config ? 2 : ARGB_SIZE;
+    }
+
+    /**
+     * Append the luma of {@code count} ARGB pixels to the buffer.
+     */
+    private static void putLuma(@NonNull final int[] argb, final int count, @NonNull final ByteBuffer target) {
+        for (int i = 0; i < count; i++) {
+            target.put((byte) PngStreamWriter.luma(argb[i]));
+        }
+    }
+
+    /**
+     * Compress the bitmap in the requested format, grayscale captures are written as grayscale
+     * PNG or as desaturated lossy images.
+     */
+    private void compress(@NonNull final Bitmap bitmap, @NonNull final Bitmap.CompressFormat cf, @NonNull final OutputStream os) throws IOException {
+        metrics.mark(CaptureMetrics.Stage.DRAW);
+        tracer.beginSection(CaptureTracer.Section.COMPRESS);
+        try {
+            hashPixels(bitmap);
+
+            final boolean parallel = Bitmap.CompressFormat.PNG == cf && parallelPng
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+
+            if (parallel) {
+                writeParallelPng(bitmap, os);
+            } else {
+                compressSerial(bitmap, cf, os);
+            }
+
+            metrics.mark(CaptureMetrics.Stage.ENCODE);
+        } finally {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Hash the pixels of the encoded bitmap, when hashes were requested.
+     */
+    private void hashPixels(@NonNull final Bitmap bitmap) {
+        if (!contentHash && !perceptualHash) return;
+
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        final ImageHasher hasher = new ImageHasher(w, h, contentHash, perceptualHash);
+        final int band = Math.max(1, Math.min(h, HASH_BAND_PIXELS / w));
+        final int[] argb = new int[w * band];
+
+        for (int y = 0; y < h; y += band) {
+            final int rows = Math.min(band, h - y);
+            bitmap.getPixels(argb, 0, w, 0, y, w, rows);
+            hasher.update(argb, 0, rows);
+        }
+
+        this.hasher = hasher;
+        metrics.mark(CaptureMetrics.Stage.HASH);
+    }
+
+    /**
+     * Whether the capture was cancelled or is past its deadline, checked between stages.
+     */
+    private boolean isAborted() {
+        return cancelled || (deadline != 0 && System.nanoTime() - deadline > 0);
+    }
+
+    private void rejectAborted() {
+        if (cancelled) {
+            promise.reject(ERROR_CAPTURE_CANCELLED, "Capture of view tag " + tag + " was cancelled");
+        } else {
+            promise.reject(ERROR_CAPTURE_TIMEOUT, "Capture of view tag " + tag + " timed out after " + timeoutMs + "ms");
+        }
+    }
+
+    /**
+     * Delete the output file of a capture without result.
+     */
+    private void discardOutput() {
+        if (output == null) return;
+
+        if (store != null) {
+            store.discard(output);
+        } else if (!output.delete()) {
+            Log.w(TAG, "Failed to delete output of capture: " + output);
+        }
+    }
+
+    /**
+     * Resolve with the URI of the written output, committed into the store when there is one.
+     *
+     * @param hash XXH64 of the output, computed while writing it
+     */
+    private void resolveFile(final long hash) {
+        final long length = output.length();
+        File file = output;
+        if (store != null) {
+            try {
+                file = store.commit(output, storePrefix, hash);
+            } catch (final IOException ex) {
+                // the pending file is still a valid capture
+                Log.w(TAG, "Failed to store capture: " + ex.getMessage(), ex);
+            }
+        }
+        resolveResult(Uri.fromFile(file).toString(), length);
+    }
+
+    /**
+     * Hand a copy of the encoded bytes, after the header, to the Blob module or the memory store
+     * and resolve with the blob descriptor or the URI.
+     */
+    private void resolveBytes(@NonNull final byte[] buffer, final int length, @NonNull final String header, @NonNull final String type) {
+        final BlobModule blobModule = Results.BLOB.equals(result) && reactContext != null
+                ? reactContext.getNativeModule(BlobModule.class)
+                : null;
+        if (Results.BLOB.equals(result) && blobModule == null) {
+            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Blob module is not available");
+            return;
+        }
+        if (Results.MEMORY.equals(result) && memoryStore == null) {
+            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "No memory store to keep the capture");
+            return;
+        }
+
+        // the pooled buffer is given back, the copy is kept as a whole
+        final byte[] prefix = header.getBytes(Charset.forName("US-ASCII"));
+        final byte[] data = new byte[prefix.length + length];
+        System.arraycopy(prefix, 0, data, 0, prefix.length);
+        System.arraycopy(buffer, 0, data, prefix.length, length);
+
+        if (blobModule == null) {
+            resolveResult(memoryUriPrefix + memoryStore.put(data, extension, type), data.length);
+            return;
+        }
+
+        final WritableMap blob = Arguments.createMap();
+        blob.putString("blobId", blobModule.store(data));
+        blob.putInt("offset", 0);
+        blob.putInt("size", data.length);
+        blob.putString("type", type);
+        blob.putDouble("lastModified", System.currentTimeMillis());
+        resolveResult(blob, data.length);
+    }
+
+    /**
+     * Media type of the encoded image, RAW pixels are plain bytes.
+     */
+    @NonNull
+    private static String mimeType(@Formats final int format) {
+        switch (format) {
+            case Formats.JPEG:
+                return "image/jpeg";
+            case Formats.PNG:
+                return "image/png";
+            case Formats.WEBP:
+                return "image/webp";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    /**
+     * Resolve with the capture result, along with its hashes and metrics when they were requested.
+     */
+    private void resolveResult(@NonNull final String value) {
+        resolveResult(value, value.length());
+    }
+
+    /**
+     * @param value result string, or blob descriptor given under {@code blob} of a result map
+     * @param size  size of the result, in bytes or chars
+     */
+    private void resolveResult(@NonNull final Object value, final long size) {
+        metrics.mark(Results.TEMP_FILE.equals(result) ? CaptureMetrics.Stage.WRITE : CaptureMetrics.Stage.BASE64);
+        metrics.finish(size);
+        if (metricsRegistry != null) {
+            metricsRegistry.record(metrics);
+        }
+
+        if (!contentHash && !perceptualHash && !reportMetrics) {
+            promise.resolve(value);
+            return;
+        }
+
+        final ImageHasher hasher = this.hasher;
+        final WritableMap map = Arguments.createMap();
+        if (value instanceof WritableMap) {
+            map.putMap("blob", (WritableMap) value);
+        } else {
+            map.putString("uri", (String) value);
+        }
+        if (reportMetrics) {
+            map.putMap("metrics", Arguments.makeNativeMap(metrics.toMap()));
+        }
+        if (hasher != null && hasher.hasContentHash()) {
+            map.putString("contentHash", ImageHasher.toHex(hasher.getContentHash()));
+        }
+        if (hasher != null && hasher.hasPerceptualHash()) {
+            map.putString("perceptualHash", ImageHasher.toHex(hasher.getPerceptualHash()));
+        }
+        promise.resolve(map);
+    }
+
+    private void compressSerial(@NonNull final Bitmap bitmap, @NonNull final Bitmap.CompressFormat cf, @NonNull final OutputStream os) throws IOException {
+        if (!isGrayscale()) {
+            bitmap.compress(cf, (int) (100.0 * quality), os);
+            return;
+        }
+
+        if (Bitmap.CompressFormat.PNG == cf) {
+            writeGrayscalePng(bitmap, os);
+            return;
+        }
+
+        final Bitmap gray = getBitmapForScreenshot(bitmap.getWidth(), bitmap.getHeight());
+        try {
+            final ColorMatrix matrix = new ColorMatrix();
+            matrix.setSaturation(0);
+            final Paint paint = new Paint();
+            paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+
+            new Canvas(gray).drawBitmap(bitmap, 0, 0, paint);
+            gray.compress(cf, (int) (100.0 * quality), os);
+        } finally {
+            recycleBitmap(gray);
+        }
+    }
+
+    /**
+     * Encode bands of the bitmap in parallel, RGBA or grayscale.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void writeParallelPng(@NonNull final Bitmap bitmap, @NonNull final OutputStream os) throws IOException {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+
+        new ParallelPngEncoder(deflaters).encode(new ParallelPngEncoder.RowSource() {
+            @Override
+            public void getRows(final int[] argb, final int y, final int rows) {
+                bitmap.getPixels(argb, 0, w, 0, y, w, rows);
+            }
+        }, w, h, isGrayscale(), os);
+    }
+
+    /**
+     * Encode the luma of the bitmap as an 8 bit grayscale PNG, a strip of rows at a time.
+     */
+    private static void writeGrayscalePng(@NonNull final Bitmap bitmap, @NonNull final OutputStream os) throws IOException {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        final int stripHeight = Math.max(1, Math.min(h, TILE_BYTES / (w * ARGB_SIZE)));
+        final int[] rows = new int[w * stripHeight];
+
+        final PngStreamWriter png = new PngStreamWriter(os, w, h, Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            for (int y = 0; y < h; y += stripHeight) {
+                final int rowCount = Math.min(stripHeight, h - y);
+                bitmap.getPixels(rows, 0, w, 0, y, w, rowCount);
+                png.writeRows(rows, 0, w, rowCount);
+            }
+            png.finish();
+        } finally {
+            png.abort();
+        }
+    }
+
+    /**
+     * Whether the output stream can receive uncompressed pixels.
+     */
+    private static boolean isRawOutput(@NonNull final OutputStream os) {
+        return os instanceof ReusableByteArrayOutputStream || os instanceof RawFileOutputStream;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends A, A> T cast(final A instance) {
+        return (T) instance;
+    }
+    //endregion
+
+    //region PixelCopy
+    /**
+     * Handler of the thread receiving PixelCopy callbacks, keeps them away from the main thread.
+     */
+    private static Handler pixelCopyHandler;
+
+    @NonNull
+    private static synchronized Handler getPixelCopyHandler() {
+        if (pixelCopyHandler == null) {
+            final HandlerThread thread = new HandlerThread("RNViewShot-PixelCopy");
+            thread.start();
+            pixelCopyHandler = new Handler(thread.getLooper());
+        }
+
+        return pixelCopyHandler;
+    }
+
+    /**
+     * Copy a window area into the bitmap without blocking the worker, the callback is invoked on
+     * a worker thread once the copy is done, failed or timed out.
+     *
+     * @param rect window area to copy, or null for the whole window
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    private void requestPixelCopy(@NonNull final Window window, @Nullable final Rect rect, @NonNull final Bitmap bitmap, @NonNull final OnPixelCopied callback) {
+        metrics.mark(CaptureMetrics.Stage.DRAW);
+        if (isAborted()) {
+            callback.onPixelCopied(PixelCopy.ERROR_TIMEOUT);
+            return;
+        }
+
+        final PixelCopyContinuation continuation = new PixelCopyContinuation(bitmap, callback);
+        try {
+            PixelCopy.request(window, rect, bitmap, continuation, continuation.handler);
+        } catch (Exception e) {
+            Log.e(TAG, "Error using PixelCopy: " + e.getMessage(), e);
+            continuation.onPixelCopyFinished(PIXEL_COPY_REQUEST_FAILED);
+            return;
+        }
+        continuation.requested();
+    }
+
+    /**
+     * Copy a SurfaceView content into the bitmap without blocking the worker.
+     *
+     * @see #requestPixelCopy(Window, Rect, Bitmap, OnPixelCopied)
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private void requestPixelCopy(@NonNull final SurfaceView view, @NonNull final Bitmap bitmap, @NonNull final OnPixelCopied callback) {
+        metrics.mark(CaptureMetrics.Stage.DRAW);
+        if (isAborted()) {
+            callback.onPixelCopied(PixelCopy.ERROR_TIMEOUT);
+            return;
+        }
+
+        final PixelCopyContinuation continuation = new PixelCopyContinuation(bitmap, callback);
+        try {
+            PixelCopy.request(view, bitmap, continuation, continuation.handler);
+        } catch (Exception e) {
+            Log.e(TAG, "Cannot PixelCopy for " + view + ": " + e.getMessage(), e);
+            continuation.onPixelCopyFinished(PIXEL_COPY_REQUEST_FAILED);
+            return;
+        }
+        continuation.requested();
+    }
+
+    /**
+     * Detaches the capture from its worker while the copy is pending and resumes it on completion
+     * or timeout, whichever comes first.
+     * <p>
+     * The destination bitmap is not pooled before the copy reports back, even when the capture
+     * was resumed earlier, as the copy may still write into it.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.N)
+    private final class PixelCopyContinuation implements PixelCopy.OnPixelCopyFinishedListener, Runnable {
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final Handler handler = getPixelCopyHandler();
+        private final CaptureScheduler.Slot slot = scheduler.detach();
+        private final Bitmap destination;
+        private final OnPixelCopied callback;
+        /**
+         * Wait for the copy, the capture timeout may be shorter than the PixelCopy one.
+         */
+        private final long timeoutMs;
+
+        private PixelCopyContinuation(@NonNull final Bitmap destination, @NonNull final OnPixelCopied callback) {
+            this.destination = destination;
+            this.callback = callback;
+            this.timeoutMs = deadline != 0
+                    ? Math.max(0, Math.min(TimeUnit.SECONDS.toMillis(SURFACE_VIEW_READ_PIXELS_TIMEOUT), TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())))
+                    : TimeUnit.SECONDS.toMillis(SURFACE_VIEW_READ_PIXELS_TIMEOUT);
+            synchronized (copyDestinations) {
+                copyDestinations.put(destination, false);
+            }
+        }
+
+        /**
+         * The copy was sent, wait for it until the timeout or a cancellation.
+         */
+        private void requested() {
+            pendingCopy = this;
+            handler.postDelayed(this, timeoutMs);
+            // cancelled while the request was sent
+            if (cancelled) {
+                abandon();
+            }
+        }
+
+        /**
+         * Resume the capture without waiting for the copy, on cancellation.
+         */
+        private void abandon() {
+            resume(PixelCopy.ERROR_TIMEOUT);
+        }
+
+        /**
+         * Result of the copy, or failure to send it.
+         */
+        @Override
+        public void onPixelCopyFinished(final int copyResult) {
+            final boolean released;
+            synchronized (copyDestinations) {
+                released = Boolean.TRUE.equals(copyDestinations.remove(destination));
+            }
+            if (released) {
+                // the capture is done with it, the copy was the last writer
+                bitmaps.put(destination);
+            }
+
+            resume(copyResult);
+        }
+
+        private void resume(final int copyResult) {
+            if (!finished.compareAndSet(false, true)) return;
+
+            pendingCopy = null;
+            handler.removeCallbacks(this);
+            slot.resume(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.mark(CaptureMetrics.Stage.PIXEL_COPY);
+                    tracer.beginSection(CaptureTracer.Section.PIXEL_COPY);
+                    try {
+                        callback.onPixelCopied(copyResult);
+                    } finally {
+                        tracer.endSection();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Timeout, a late copy result is ignored.
+         */
+        @Override
+        public void run() {
+            Log.w(TAG, "PixelCopy timed out after " + timeoutMs + "ms");
+            resume(PixelCopy.ERROR_TIMEOUT);
+        }
+    }
+    //endregion
+
+    //region Cache re-usable bitmaps
+    /**
+     * Reusable bitmaps for screenshots.
+     */
+    private static final BitmapPool bitmaps = new BitmapPool();
+    /**
+     * Destinations of the PixelCopy requests which did not report back, mapped to whether their
+     * capture released them meanwhile. Guarded by itself.
+     */
+    private static final IdentityHashMap<Bitmap, Boolean> copyDestinations = new IdentityHashMap<>();
+
+    /**
+     * Propose allocation size of the array output stream, learned from previous captures of the
+     * same format.
+     */
+    private int proposeSize(@NonNull final View view) {
+        final long pixels = (width != null && height != null)
+                ? (long) width * height
+                : (long) view.getWidth() * view.getHeight();
+
+        if (Formats.RAW == format) {
+            final int bytesPerPixel = BitmapConfigs.GRAYSCALE.equals(bitmapConfig) ? 1
+                    : BitmapConfigs.RGB_565.equals(bitmapConfig) ? 2
+                    : ARGB_SIZE;
+            return (int) Math.min(Integer.MAX_VALUE - 8, pixels * bytesPerPixel);
+        }
+
+        // until something is learned assume a poorly compressible image
+        return buffers.predictSize(format, pixels, 1.0);
+    }
+
+    /**
+     * Learn from the encoded size and give the stream buffer back to the pool.
+     */
+    private void releaseStream(@NonNull final OutputStream os, @NonNull final Point size) {
+        final long pixels = (width != null && height != null)
+                ? (long) width * height
+                : (long) size.x * size.y;
+
+        if (os instanceof Base64StringOutputStream) {
+            final Base64StringOutputStream stream = cast(os);
+            buffers.recordSize(format, pixels, (int) Math.min(Integer.MAX_VALUE, stream.getByteCount()));
+            return;
+        }
+
+        if (!(os instanceof ReusableByteArrayOutputStream)) return;
+
+        final ReusableByteArrayOutputStream stream = cast(os);
+        if (Formats.RAW != format) {
+            buffers.recordSize(format, pixels, stream.size());
+        }
+
+        buffers.release(stream.innerBuffer());
+    }
+
+    /**
+     * Return bitmap to the pool of available ones.
+     */
+    private static void recycleBitmap(@Nullable final Bitmap bitmap) {
+        synchronized (copyDestinations) {
+            if (bitmap != null && copyDestinations.containsKey(bitmap)) {
+                // pooled once the copy reports back
+                copyDestinations.put(bitmap, true);
+                return;
+            }
+        }
+        bitmaps.put(bitmap);
+    }
+
+    /**
+     * Take a cleared bitmap for screenshot from the pool, a new one is created if none can be reused.
+     */
+    @NonNull
+    private Bitmap getBitmapForScreenshot(final int width, final int height) {
+        return getBitmapForScreenshot(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    @NonNull
+    private Bitmap getBitmapForScreenshot(final int width, final int height, @NonNull final Bitmap.Config config) {
+        return bitmaps.get(width, height, config, metrics);
+    }
+
+    /**
+     * Take a cleared bitmap with exact width and height for screenshot from the pool.
+     */
+    @NonNull
+    private Bitmap getExactBitmapForScreenshot(final int width, final int height) {
+        return bitmaps.get(width, height, Bitmap.Config.ARGB_8888, metrics);
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Receives the screenshot resolution once the image is written to the output stream.
+     */
+    private interface CaptureCallback {
+        void onCaptured(@NonNull Point size) throws IOException;
+    }
+
+    /**
+     * Decides whether a rendered frame is worth encoding, e.g. to skip frames identical to the
+     * previous one. Called on a capture worker thread before any scaling.
+     */
+    public interface FrameFilter {
+        boolean accept(@NonNull Bitmap bitmap);
+    }
 
+    /**
+     * Receives the result of an asynchronous PixelCopy request on a capture worker thread.
+     */
+    private interface OnPixelCopied {
+        void onPixelCopied(int copyResult);
     }
     //endregion
 
@@ -1219,6 +2443,7 @@ public class ViewShot implements UIBlock {
             Canvas canvas = null;
             try {
                 canvas = new Canvas(bitmap);
+                canvas.scale(drawScaleX, drawScaleY);
             } catch (Exception e) {
                 Log.e(TAG, "Error creating canvas: " + e.getMessage(), e);
                 return;
@@ -1231,67 +2456,74 @@ public class ViewShot implements UIBlock {
                 Log.e(TAG, "Error clearing bitmap: " + e.getMessage(), e);
             }
 
-            // Handle background
+            drawViewWithBackground(view, canvas);
+        } catch (Exception e) {
+            Log.e(TAG, "Fatal error in captureViewOld: " + e.getMessage(), e);
+            // At least try to draw something
             try {
-                final Drawable background = view.getBackground();
-                if (background != null) {
-                    try {
-                        background.draw(canvas);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error drawing background: " + e.getMessage(), e);
-                        canvas.drawColor(Color.WHITE); // Fallback to white background
-                    }
-                } else {
-                    canvas.drawColor(Color.TRANSPARENT);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error handling background: " + e.getMessage(), e);
+                Canvas canvas = new Canvas(bitmap);
+                canvas.drawColor(Color.WHITE);
+            } catch (Exception ignored) {
+                Log.e(TAG, "Failed to create even a blank canvas", ignored);
+                // Nothing more we can do
+            }
+        }
+    }
+
+    /**
+     * Draw the view background then its content, the background is never drawn twice.
+     */
+    private void drawViewWithBackground(@NonNull final View view, @NonNull final Canvas canvas) {
+        // Handle background
+        try {
+            final Drawable background = view.getBackground();
+            if (background != null) {
                 try {
+                    background.draw(canvas);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error drawing background: " + e.getMessage(), e);
                     canvas.drawColor(Color.WHITE); // Fallback to white background
-                } catch (Exception inner) {
-                    Log.e(TAG, "Error drawing fallback background: " + inner.getMessage(), inner);
                 }
+            } else {
+                canvas.drawColor(Color.TRANSPARENT);
             }
-
+        } catch (Exception e) {
+            Log.e(TAG, "Error handling background: " + e.getMessage(), e);
             try {
-                // Use alternative approach for ViewGroups to prevent duplicate content
-                if (view instanceof ViewGroup) {
-                    // Draw view directly but be careful with background
-                    ViewGroup vg = (ViewGroup) view;
+                canvas.drawColor(Color.WHITE); // Fallback to white background
+            } catch (Exception inner) {
+                Log.e(TAG, "Error drawing fallback background: " + inner.getMessage(), inner);
+            }
+        }
 
-                    // Save original background
-                    Drawable originalBg = vg.getBackground();
+        try {
+            // Use alternative approach for ViewGroups to prevent duplicate content
+            if (view instanceof ViewGroup) {
+                // Draw view directly but be careful with background
+                ViewGroup vg = (ViewGroup) view;
 
-                    // Temporarily clear background to prevent double-drawing
-                    vg.setBackground(null);
+                // Save original background
+                Drawable originalBg = vg.getBackground();
 
-                    // Draw the view (which calls dispatchDraw internally)
-                    vg.draw(canvas);
+                // Temporarily clear background to prevent double-drawing
+                vg.setBackground(null);
 
-                    // Restore background
-                    vg.setBackground(originalBg);
-                } else {
-                    // For non-ViewGroups, use the normal draw method
-                    view.draw(canvas);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error drawing view: " + e.getMessage(), e);
-                try {
-                    // Last resort - try the simplest draw call
-                    view.draw(canvas);
-                } catch (Exception inner) {
-                    Log.e(TAG, "Fatal error drawing view: " + inner.getMessage(), inner);
-                }
+                // Draw the view (which calls dispatchDraw internally)
+                vg.draw(canvas);
+
+                // Restore background
+                vg.setBackground(originalBg);
+            } else {
+                // For non-ViewGroups, use the normal draw method
+                view.draw(canvas);
             }
         } catch (Exception e) {
-            Log.e(TAG, "Fatal error in captureViewOld: " + e.getMessage(), e);
-            // At least try to draw something
+            Log.e(TAG, "Error drawing view: " + e.getMessage(), e);
             try {
-                Canvas canvas = new Canvas(bitmap);
-                canvas.drawColor(Color.WHITE);
-            } catch (Exception ignored) {
-                Log.e(TAG, "Failed to create even a blank canvas", ignored);
-                // Nothing more we can do
+                // Last resort - try the simplest draw call
+                view.draw(canvas);
+            } catch (Exception inner) {
+                Log.e(TAG, "Fatal error drawing view: " + inner.getMessage(), inner);
             }
         }
     }
@@ -1326,114 +2558,163 @@ public class ViewShot implements UIBlock {
     /**
      * Specialized method for full-screen captures that uses a simpler and more direct approach
      */
-    private void captureScreenDirectly(View rootView) {
+    private void captureScreenDirectly(final View rootView) {
         try {
             // Get the root dimensions
-            int w = rootView.getWidth();
-            int h = rootView.getHeight();
+            final int w = rootView.getWidth();
+            final int h = rootView.getHeight();
 
             if (w <= 0 || h <= 0) {
                 promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Root view has invalid dimensions");
                 return;
             }
 
-            // Create bitmap with original dimensions
-            Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            // Take a bitmap at the requested size, the screen is scaled while copied or drawn
+            renderConfig = resolveRenderConfig(rootView);
+            final Bitmap bitmap = isScaledOutput(w, h)
+                    ? getBitmapForScreenshot(width, height, renderConfig)
+                    : getBitmapForScreenshot(w, h, renderConfig);
 
             // For Android Oreo (8.0) and above, use PixelCopy for better quality
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 try {
-                    // Use PixelCopy API for full screen capture
-                    final CountDownLatch latch = new CountDownLatch(1);
                     final Activity activity = currentActivity;
-                    final boolean[] success = {false};
 
                     if (activity != null) {
-                        PixelCopy.request(
-                            activity.getWindow(),
-                            bitmap,
-                            copyResult -> {
-                                success[0] = (copyResult == PixelCopy.SUCCESS);
-                                latch.countDown();
-                            },
-                            new Handler(Looper.getMainLooper())
-                        );
-
-                        // Wait for completion
-                        latch.await(SURFACE_VIEW_READ_PIXELS_TIMEOUT, TimeUnit.SECONDS);
+                        // Use PixelCopy API for full screen capture, output continues from the callback
+                        requestPixelCopy(activity.getWindow(), null, bitmap, new OnPixelCopied() {
+                            @Override
+                            public void onPixelCopied(final int copyResult) {
+                                try {
+                                    if (copyResult != PixelCopy.SUCCESS && !isAborted()) {
+                                        // If PixelCopy failed, fall back to regular capture
+                                        drawScaled(rootView, bitmap);
+                                    }
 
-                        if (!success[0]) {
-                            // If PixelCopy failed, fall back to regular capture
-                            rootView.draw(new Canvas(bitmap));
-                        }
+                                    saveScreenCapture(bitmap, bitmap.getWidth(), bitmap.getHeight());
+                                } catch (Exception e) {
+                                    Log.e(TAG, "Error in direct screen capture: " + e.getMessage());
+                                    promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture screen: " + e.getMessage());
+                                }
+                            }
+                        });
+                        return;
                     } else {
                         // No activity, use normal drawing
-                        rootView.draw(new Canvas(bitmap));
+                        drawScaled(rootView, bitmap);
                     }
                 } catch (Exception e) {
                     Log.e(TAG, "Error using PixelCopy for screen capture: " + e.getMessage(), e);
                     // Fall back to regular drawing
-                    rootView.draw(new Canvas(bitmap));
+                    drawScaled(rootView, bitmap);
                 }
             } else {
                 // For older Android versions
-                Canvas canvas = new Canvas(bitmap);
-                rootView.draw(canvas);
+                drawScaled(rootView, bitmap);
             }
 
-            // Handle output format
-            try {
-                // Resize if needed
-                if (width != null && height != null && (width != w || height != h)) {
-                    Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
-                    bitmap.recycle(); // Recycle original
-                    bitmap = scaledBitmap;
-                }
+            saveScreenCapture(bitmap, bitmap.getWidth(), bitmap.getHeight());
+        } catch (Exception e) {
+            Log.e(TAG, "Error in direct screen capture: " + e.getMessage());
+            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture screen: " + e.getMessage());
+        }
+    }
 
-                // Output to requested format
-                if (Results.TEMP_FILE.equals(result)) {
-                    FileOutputStream fos = new FileOutputStream(output);
-                    try {
-                        // Correctly get the CompressFormat from format integer
-                        Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.PNG; // Default
-                        if (this.format >= 0 && this.format < Formats.mapping.length) {
-                            compressFormat = Formats.mapping[this.format];
-                        }
-                        bitmap.compress(compressFormat, (int) (100.0 * quality), fos);
-                        promise.resolve(Uri.fromFile(output).toString());
-                    } finally {
-                        fos.close();
-                        bitmap.recycle();
-                    }
-                } else if (Results.BASE_64.equals(result) || Results.DATA_URI.equals(result) || Results.ZIP_BASE_64.equals(result)) {
-                    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    /**
+     * Draw the view scaled to fit the bitmap.
+     */
+    private static void drawScaled(@NonNull final View view, @NonNull final Bitmap bitmap) {
+        final Canvas canvas = new Canvas(bitmap);
+        canvas.scale(bitmap.getWidth() / (float) view.getWidth(), bitmap.getHeight() / (float) view.getHeight());
+        view.draw(canvas);
+    }
+
+    /**
+     * Whether the requested output size differs from the rendered content size.
+     */
+    private boolean isScaledOutput(final int w, final int h) {
+        return width != null && height != null && (width != w || height != h);
+    }
+
+    /**
+     * Write a full-screen capture in the requested format and resolve the promise.
+     */
+    private void saveScreenCapture(Bitmap bitmap, final int w, final int h) {
+        if (isAborted()) {
+            recycleBitmap(bitmap);
+            discardOutput();
+            rejectAborted();
+            return;
+        }
+
+        try {
+            // Resize if needed
+            if (width != null && height != null && (width != w || height != h)) {
+                Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                recycleBitmap(bitmap); // Recycle original
+                bitmap = scaledBitmap;
+            }
+
+            // Output to requested format
+            if (Results.TEMP_FILE.equals(result)) {
+                final HashingOutputStream fos = new HashingOutputStream(new FileOutputStream(output));
+                try {
                     // Correctly get the CompressFormat from format integer
                     Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.PNG; // Default
                     if (this.format >= 0 && this.format < Formats.mapping.length) {
                         compressFormat = Formats.mapping[this.format];
                     }
-                    bitmap.compress(compressFormat, (int) (100.0 * quality), bos);
-                    bitmap.recycle();
-
-                    String data = Base64.encodeToString(bos.toByteArray(), Base64.NO_WRAP);
-
-                    if (Results.DATA_URI.equals(result)) {
-                        String imageFormat = "jpg".equals(extension) ? "jpeg" : extension;
-                        promise.resolve("data:image/" + imageFormat + ";base64," + data);
-                    } else {
-                        promise.resolve(data);
+                    compress(bitmap, compressFormat, fos);
+                } finally {
+                    tracer.beginSection(CaptureTracer.Section.WRITE);
+                    try {
+                        fos.close();
+                    } finally {
+                        tracer.endSection();
                     }
+                    recycleBitmap(bitmap);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing bitmap for output: " + e.getMessage());
-                if (bitmap != null && !bitmap.isRecycled()) {
-                    bitmap.recycle();
+                // committed once closed
+                resolveFile(fos.getHash());
+            } else if (Results.BASE_64.equals(result) || Results.DATA_URI.equals(result) || Results.ZIP_BASE_64.equals(result)) {
+                final long pixels = (long) bitmap.getWidth() * bitmap.getHeight();
+                final String prefix = Results.DATA_URI.equals(result)
+                        ? "data:image/" + ("jpg".equals(extension) ? "jpeg" : extension) + ";base64,"
+                        : "";
+
+                // compressed image is Base64 encoded on the fly, after the inline prefix
+                final Base64StringOutputStream bos = new Base64StringOutputStream(
+                        buffers.predictSize(format, pixels, 1.0), prefix.length());
+                bos.append(prefix);
+                // Correctly get the CompressFormat from format integer
+                Bitmap.CompressFormat compressFormat = Bitmap.CompressFormat.PNG; // Default
+                if (this.format >= 0 && this.format < Formats.mapping.length) {
+                    compressFormat = Formats.mapping[this.format];
+                }
+                compress(bitmap, compressFormat, bos);
+                buffers.recordSize(format, pixels, (int) Math.min(Integer.MAX_VALUE, bos.getByteCount()));
+                recycleBitmap(bitmap);
+
+                resolveResult(bos.build());
+            } else if (Results.BLOB.equals(result) || Results.MEMORY.equals(result)) {
+                final long pixels = (long) bitmap.getWidth() * bitmap.getHeight();
+                final ReusableByteArrayOutputStream bos = new ReusableByteArrayOutputStream(
+                        buffers.lease(buffers.predictSize(format, pixels, 1.0)));
+                final Bitmap.CompressFormat compressFormat = this.format >= 0 && this.format < Formats.mapping.length
+                        ? Formats.mapping[this.format]
+                        : Bitmap.CompressFormat.PNG;
+                try {
+                    compress(bitmap, compressFormat, bos);
+                    buffers.recordSize(format, pixels, bos.size());
+                    resolveBytes(bos.innerBuffer(), bos.size(), "", mimeType(Formats.RAW == format ? Formats.PNG : format));
+                } finally {
+                    buffers.release(bos.innerBuffer());
+                    recycleBitmap(bitmap);
                 }
-                promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to process screen capture: " + e.getMessage());
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error in direct screen capture: " + e.getMessage());
-            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to capture screen: " + e.getMessage());
+            Log.e(TAG, "Error processing bitmap for output: " + e.getMessage());
+            promise.reject(ERROR_UNABLE_TO_SNAPSHOT, "Failed to process screen capture: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,484 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.net.Uri;
+import android.view.TextureView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.BridgeReactContext;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.blob.BlobModule;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+import fr.greweb.reactnativeviewshot.ViewShot.Formats;
+import fr.greweb.reactnativeviewshot.ViewShot.Results;
+
+/**
+ * Drives {@link ViewShot} end to end on synthetic view trees: captures are scheduled like the
+ * module does, results are decoded back to pixels and checked against the color the tree was
+ * painted with.
+ */
+final class CaptureHarness {
+    //region Constants
+    static final String[] RESULTS = {Results.TEMP_FILE, Results.BASE_64, Results.ZIP_BASE_64, Results.DATA_URI, Results.BLOB, Results.MEMORY};
+    static final int[] FORMATS = {Formats.PNG, Formats.JPEG, Formats.WEBP, Formats.RAW};
+
+    /**
+     * Solid border painted around every tree, so the probed pixel survives lossy formats.
+     */
+    static final int BORDER = 16;
+    static final int PROBE = 4;
+    private static final int LOSSY_TOLERANCE = 24;
+    private static final long TIMEOUT_SECONDS = 60;
+    private static final String FILE_PREFIX = "ReactNative-snapshot-image-";
+    private static final String MEMORY_URI_PREFIX = "content://fr.greweb.reactnativeviewshot.test.viewshot/";
+    //endregion
+
+    //region Class members
+    private final Activity activity;
+    private final CaptureScheduler scheduler;
+    private final CaptureMetricsRegistry metrics = new CaptureMetricsRegistry();
+    private final FrameLayout container;
+    /**
+     * Temp file captures, committed and released like the module does.
+     */
+    private final CaptureStore store;
+    private final CaptureMemoryStore memoryStore = new CaptureMemoryStore();
+    @Nullable
+    private BlobContext blobContext;
+    private int nextTag = 1;
+    //endregion
+
+    //region Constructors
+    CaptureHarness(@NonNull final Activity activity, @NonNull final CaptureScheduler scheduler) {
+        this.activity = activity;
+        this.scheduler = scheduler;
+        this.container = new FrameLayout(activity);
+        this.store = new CaptureStore(Collections.singletonList(new File(activity.getCacheDir(), "RNViewShot")));
+        activity.setContentView(container);
+    }
+    //endregion
+
+    //region Trees
+    /**
+     * A {@code depth} levels deep chain of ViewGroups ending with text.
+     */
+    @NonNull
+    Tree deepTree(final int depth, final int color) {
+        final Context context = activity;
+        final FrameLayout root = new FrameLayout(context);
+        root.setBackgroundColor(color);
+        root.setPadding(BORDER, BORDER, BORDER, BORDER);
+
+        ViewGroup parent = root;
+        for (int level = 0; level < depth; level++) {
+            final FrameLayout child = new FrameLayout(context);
+            child.setBackgroundColor(level % 2 == 0 ? Color.LTGRAY : Color.WHITE);
+            child.setPadding(2, 2, 2, 2);
+            parent.addView(child, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            parent = child;
+        }
+
+        final TextView text = new TextView(context);
+        text.setText("depth " + depth);
+        parent.addView(text);
+        return attach("deep" + depth, root, color, 320, 480);
+    }
+
+    /**
+     * A ScrollView whose content is {@code contentHeight} tall, captured in full.
+     */
+    @NonNull
+    Tree tallScrollTree(final int contentHeight, final int color) {
+        final Context context = activity;
+        final ScrollView root = new ScrollView(context);
+        final LinearLayout content = new LinearLayout(context);
+        content.setOrientation(LinearLayout.VERTICAL);
+        content.setBackgroundColor(color);
+        content.setPadding(BORDER, BORDER, BORDER, BORDER);
+
+        for (int y = BORDER; y < contentHeight - BORDER; y += 100) {
+            final TextView row = new TextView(context);
+            row.setText("row " + y);
+            row.setBackgroundColor(y % 200 == 0 ? Color.WHITE : Color.LTGRAY);
+            content.addView(row, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, Math.min(100, contentHeight - BORDER - y)));
+        }
+
+        root.addView(content, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return attach("scroll" + contentHeight, root, color, 320, 480);
+    }
+
+    /**
+     * A layout holding a TextureView, rendered as a special child.
+     */
+    @NonNull
+    Tree textureTree(final int color) {
+        final Context context = activity;
+        final FrameLayout root = new FrameLayout(context);
+        root.setBackgroundColor(color);
+        root.setPadding(BORDER, BORDER, BORDER, BORDER);
+        root.addView(new TextureView(context), new ViewGroup.LayoutParams(200, 200));
+        return attach("texture", root, color, 320, 480);
+    }
+
+    @NonNull
+    private Tree attach(@NonNull final String name, @NonNull final View root, final int color, final int width, final int height) {
+        container.addView(root, new FrameLayout.LayoutParams(width, height));
+        container.measure(
+                View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        container.layout(0, 0, width, height);
+        return new Tree(name, root, color, nextTag++);
+    }
+    //endregion
+
+    //region Captures
+    /**
+     * Schedule a capture of the tree, like {@code captureRef} does.
+     */
+    @NonNull
+    Pending capture(@NonNull final Tree tree, @NonNull final String result, @Formats final int format) throws IOException {
+        final String extension = extensionOf(format);
+        final File output = Results.TEMP_FILE.equals(result) ? store.newFile(extension) : null;
+        final BlobContext context = Results.BLOB.equals(result) ? blobContext() : null;
+        final Pending pending = new Pending(tree, result, format, store, memoryStore, context != null ? context.blobs : null);
+
+        new ViewShot(tree.tag, extension, format, 0.9, null, null, output, result, false,
+                context, activity, false, pending.promise(), scheduler, CaptureScheduler.Priority.USER_INITIATED)
+                .setMetrics(metrics, false)
+                .setStore(store, FILE_PREFIX)
+                .setMemoryStore(memoryStore, MEMORY_URI_PREFIX)
+                .execute(tree.root);
+        return pending;
+    }
+
+    @NonNull
+    CaptureMetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @NonNull
+    private synchronized BlobContext blobContext() {
+        if (blobContext == null) {
+            blobContext = new BlobContext(activity);
+        }
+        return blobContext;
+    }
+
+    /**
+     * Bytes allocated by all live threads so far, captures run on the scheduler workers.
+     */
+    static long allocatedBytes() {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (final long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    static String nameOf(@Formats final int format) {
+        return Formats.RAW == format ? "raw" : Formats.mapping[format].name().toLowerCase();
+    }
+
+    private static String extensionOf(@Formats final int format) {
+        switch (format) {
+            case Formats.JPEG:
+                return "jpg";
+            case Formats.WEBP:
+                return "webm";
+            case Formats.RAW:
+                return "raw";
+            default:
+                return "png";
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Holds blob results in a real {@link BlobModule}, there is no React instance to look it up.
+     */
+    private static final class BlobContext extends BridgeReactContext {
+        final BlobModule blobs;
+
+        BlobContext(@NonNull final Context base) {
+            super(base);
+            this.blobs = new BlobModule(this);
+        }
+
+        @Override
+        public <T extends NativeModule> T getNativeModule(final Class<T> moduleInterface) {
+            return BlobModule.class == moduleInterface ? moduleInterface.cast(blobs) : super.getNativeModule(moduleInterface);
+        }
+    }
+
+    /**
+     * Result maps without the native bridge, which is not loaded on the JVM.
+     */
+    @Implements(Arguments.class)
+    public static final class ShadowArguments {
+        @Implementation
+        protected static WritableMap createMap() {
+            return new JavaOnlyMap();
+        }
+    }
+
+    static final class Tree {
+        final String name;
+        final View root;
+        final int color;
+        final int tag;
+
+        private Tree(final String name, final View root, final int color, final int tag) {
+            this.name = name;
+            this.root = root;
+            this.color = color;
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * A scheduled capture, settled through a proxy of the bridge promise.
+     */
+    static final class Pending implements InvocationHandler {
+        final Tree tree;
+        final String result;
+        final int format;
+        private final CaptureStore store;
+        private final CaptureMemoryStore memoryStore;
+        @Nullable
+        private final BlobModule blobs;
+        private final CountDownLatch settled = new CountDownLatch(1);
+        private volatile Object value;
+        private volatile String error;
+
+        private Pending(final Tree tree, final String result, final int format, final CaptureStore store,
+                        final CaptureMemoryStore memoryStore, @Nullable final BlobModule blobs) {
+            this.tree = tree;
+            this.result = result;
+            this.format = format;
+            this.store = store;
+            this.memoryStore = memoryStore;
+            this.blobs = blobs;
+        }
+
+        @NonNull
+        Promise promise() {
+            return (Promise) Proxy.newProxyInstance(Promise.class.getClassLoader(), new Class<?>[]{Promise.class}, this);
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return "equals".equals(method.getName()) ? proxy == args[0]
+                        : "hashCode".equals(method.getName()) ? System.identityHashCode(proxy)
+                        : "Pending " + describe();
+            }
+
+            // the reject overloads differ between react-native versions
+            if ("resolve".equals(method.getName())) {
+                value = args != null && args.length > 0 ? args[0] : null;
+            } else {
+                error = method.getName() + Arrays.toString(args);
+            }
+            settled.countDown();
+            return null;
+        }
+
+        /**
+         * Wait for the result and check its size and color.
+         */
+        void verify() throws Exception {
+            if (!settled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new AssertionError(describe() + " timed out");
+            }
+            if (error != null) {
+                throw new AssertionError(describe() + " failed: " + error);
+            }
+            final boolean isBlob = Results.BLOB.equals(result);
+            if (isBlob ? !(value instanceof ReadableMap) : !(value instanceof String)) {
+                throw new AssertionError(describe() + " resolved with " + value);
+            }
+
+            try {
+                final int pixel = isBlob ? probeBytes(blobs.resolve((ReadableMap) value)) : probe((String) value);
+                final int tolerance = Formats.JPEG == format || Formats.WEBP == format ? LOSSY_TOLERANCE : 0;
+                if (!matches(pixel, tree.color, tolerance)) {
+                    throw new AssertionError(describe() + " has pixel " + Integer.toHexString(pixel)
+                            + " instead of " + Integer.toHexString(tree.color));
+                }
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Give the result back like {@code releaseCapture} does.
+         */
+        private void release() {
+            if (Results.TEMP_FILE.equals(result)) {
+                store.release(new File(Uri.parse((String) value).getPath()));
+            } else if (Results.MEMORY.equals(result)) {
+                memoryStore.release(((String) value).substring(MEMORY_URI_PREFIX.length()));
+            } else if (Results.BLOB.equals(result) && blobs != null) {
+                blobs.remove(((ReadableMap) value).getString("blobId"));
+            }
+        }
+
+        @NonNull
+        String describe() {
+            return tree.name + " " + result + " " + nameOf(format);
+        }
+
+        /**
+         * ARGB of the probed pixel of the result.
+         */
+        private int probe(@NonNull final String value) throws IOException, DataFormatException {
+            final int width = tree.root.getWidth();
+
+            if (Results.TEMP_FILE.equals(result)) {
+                final File file = new File(Uri.parse(value).getPath());
+                if (!store.contains(file)) {
+                    throw new AssertionError(describe() + " was not committed into the store: " + value);
+                }
+                return probeBytes(Files.readAllBytes(file.toPath()));
+            }
+            if (Results.MEMORY.equals(result)) {
+                final CaptureMemoryStore.Entry entry = memoryStore.get(value.substring(MEMORY_URI_PREFIX.length()));
+                if (entry == null) {
+                    throw new AssertionError(describe() + " is not in the memory store: " + value);
+                }
+                return probeBytes(entry.data);
+            }
+
+            String encoded = value;
+            if (Results.DATA_URI.equals(result)) {
+                encoded = value.substring(value.indexOf(',') + 1);
+            }
+
+            // RAW base64 results start with the plain text resolution header
+            String header = "";
+            if (Formats.RAW == format && !Results.DATA_URI.equals(result)) {
+                final int end = encoded.indexOf('|') + 1;
+                header = encoded.substring(0, end);
+                encoded = encoded.substring(end);
+            }
+
+            byte[] bytes = Base64.getDecoder().decode(encoded);
+            if (Results.ZIP_BASE_64.equals(result)) {
+                bytes = inflate(bytes);
+            }
+
+            if (Formats.RAW != format) return probeImage(bytes);
+
+            final byte[] framed = new byte[header.length() + bytes.length];
+            System.arraycopy(header.getBytes(StandardCharsets.US_ASCII), 0, framed, 0, header.length());
+            System.arraycopy(bytes, 0, framed, header.length(), bytes.length);
+            return probeRaw(framed, width);
+        }
+
+        /**
+         * Encoded image or RAW pixels after their header, as files, blobs and memory captures
+         * hold them.
+         */
+        private int probeBytes(@NonNull final byte[] bytes) {
+            return Formats.RAW == format ? probeRaw(bytes, tree.root.getWidth()) : probeImage(bytes);
+        }
+
+        private int probeImage(@NonNull final byte[] bytes) {
+            final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            if (bitmap == null) {
+                throw new AssertionError(describe() + " is not a decodable image");
+            }
+            if (bitmap.getWidth() != tree.root.getWidth() || bitmap.getHeight() < tree.root.getHeight()) {
+                throw new AssertionError(describe() + " is " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            }
+            return bitmap.getPixel(PROBE, PROBE);
+        }
+
+        /**
+         * RGBA pixels, after an optional {@code w:h|} header.
+         */
+        private int probeRaw(@NonNull final byte[] bytes, final int defaultWidth) {
+            int width = defaultWidth;
+            int offset = 0;
+            final String start = new String(bytes, 0, Math.min(32, bytes.length), StandardCharsets.US_ASCII);
+            final int end = start.indexOf('|');
+            if (end > 0 && Character.isDigit(start.charAt(0))) {
+                width = Integer.parseInt(start.substring(0, start.indexOf(':')));
+                offset = end + 1;
+            }
+            if (width != tree.root.getWidth()) {
+                throw new AssertionError(describe() + " is " + width + " pixels wide");
+            }
+
+            final int i = offset + (PROBE * width + PROBE) * 4;
+            return ((bytes[i + 3] & 0xFF) << 24) | ((bytes[i] & 0xFF) << 16) | ((bytes[i + 1] & 0xFF) << 8) | (bytes[i + 2] & 0xFF);
+        }
+
+        private static byte[] inflate(@NonNull final byte[] bytes) throws DataFormatException {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+                final byte[] chunk = new byte[64 * 1024];
+                while (!inflater.finished()) {
+                    final int count = inflater.inflate(chunk);
+                    if (count == 0 && inflater.needsInput()) {
+                        throw new DataFormatException("Truncated zlib stream");
+                    }
+                    out.write(chunk, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static boolean matches(final int pixel, final int color, final int tolerance) {
+            for (int shift = 0; shift <= 24; shift += 8) {
+                if (Math.abs(((pixel >>> shift) & 0xFF) - ((color >>> shift) & 0xFF)) > tolerance) return false;
+            }
+            return true;
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,118 @@
+package fr.greweb.reactnativeviewshot;
+
+import android.app.Activity;
+import android.graphics.Color;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Capture throughput and allocations of every result and format, and concurrent captures of
+ * different views, which must never see each other's pixels through the shared pools.
+ * <p>
+ * Figures are printed to the test output, they are not asserted so the test stays reliable on
+ * shared CI machines.
+ */
+@RunWith(RobolectricTestRunner.class)
+// result maps are plain Java maps, see CaptureHarness.ShadowArguments
+@Config(sdk = 30, shadows = CaptureHarness.ShadowArguments.class, instrumentedPackages = "com.facebook.react.bridge")
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ViewShotThroughputTest {
+    private static final int WARMUP_CAPTURES = 1;
+    private static final int MEASURED_CAPTURES = 3;
+    /**
+     * Tall enough for PNG and RAW file captures to be rendered in tiles.
+     */
+    private static final int TALL_CONTENT_HEIGHT = 14000;
+
+    private CaptureScheduler scheduler;
+    private CaptureHarness harness;
+
+    @Before
+    public void setUp() {
+        final Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        scheduler = new CaptureScheduler(4, 64);
+        harness = new CaptureHarness(activity, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void everyResultAndFormat() throws Exception {
+        final List<CaptureHarness.Tree> trees = new ArrayList<>();
+        trees.add(harness.deepTree(48, Color.rgb(200, 40, 40)));
+        trees.add(harness.tallScrollTree(TALL_CONTENT_HEIGHT, Color.rgb(40, 160, 60)));
+        trees.add(harness.textureTree(Color.rgb(40, 80, 200)));
+
+        System.out.println(String.format(Locale.US, "%-12s %-10s %-5s %10s %14s %8s",
+                "tree", "result", "fmt", "capture/s", "bytes/capture", "reuse"));
+
+        for (final CaptureHarness.Tree tree : trees) {
+            for (final String result : CaptureHarness.RESULTS) {
+                for (final int format : CaptureHarness.FORMATS) {
+                    for (int i = 0; i < WARMUP_CAPTURES; i++) {
+                        harness.capture(tree, result, format).verify();
+                    }
+                    harness.getMetrics().reset();
+
+                    final long allocated = CaptureHarness.allocatedBytes();
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < MEASURED_CAPTURES; i++) {
+                        harness.capture(tree, result, format).verify();
+                    }
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    final long bytes = (CaptureHarness.allocatedBytes() - allocated) / MEASURED_CAPTURES;
+                    final Map<String, Object> report = harness.getMetrics().snapshot();
+
+                    System.out.println(String.format(Locale.US, "%-12s %-10s %-5s %10.1f %14d %7.0f%%",
+                            tree.name, result, CaptureHarness.nameOf(format), MEASURED_CAPTURES / seconds, bytes,
+                            100 * (Double) report.get("bitmapReuseRate")));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentCapturesKeepTheirPixels() throws Exception {
+        final List<CaptureHarness.Tree> trees = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int color = Color.rgb(32 * i, 255 - 32 * i, (97 * i) % 256);
+            trees.add(i % 2 == 0 ? harness.deepTree(8 + i, color) : harness.textureTree(color));
+        }
+
+        // every view is captured in every result and format while the others are in flight
+        final List<CaptureHarness.Pending> pending = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (final String result : CaptureHarness.RESULTS) {
+            for (final int format : CaptureHarness.FORMATS) {
+                for (final CaptureHarness.Tree tree : trees) {
+                    pending.add(harness.capture(tree, result, format));
+                }
+                for (final CaptureHarness.Pending capture : pending) {
+                    capture.verify();
+                }
+                pending.clear();
+            }
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final Map<String, Object> report = harness.getMetrics().snapshot();
+        System.out.println(String.format(Locale.US, "concurrent: %.0f captures in %.1fs, %.1f capture/s, %.0f%% bitmap reuse",
+                (Double) report.get("captures"), seconds, (Double) report.get("captures") / seconds,
+                100 * (Double) report.get("bitmapReuseRate")));
+    }
+}
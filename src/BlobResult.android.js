@@ -0,0 +1,10 @@
+//@flow
+import BlobManager from "react-native/Libraries/Blob/BlobManager";
+
+// blob results come as descriptors of the bytes held by the native Blob module
+export default function toBlobResult(result: Object): Object {
+  if (typeof result.blobId === "string") {
+    return BlobManager.createFromOptions(result);
+  }
+  return { ...result, blob: BlobManager.createFromOptions(result.blob) };
+}
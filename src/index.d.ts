@@ -14,6 +14,90 @@ declare module 'react-native-view-shot' {
     import { LayoutChangeEvent } from 'react-native'
 
 
+    export interface CaptureResultWithDetails {
+        /**
+         * the capture result, as it is resolved without hashes.
+         */
+        uri: string;
+        /**
+         * 16 hex digits, set with the contentHash option.
+         */
+        contentHash?: string;
+        /**
+         * 16 hex digits, set with the perceptualHash option.
+         */
+        perceptualHash?: string;
+        /**
+         * set with the metrics option.
+         */
+        metrics?: CaptureMetrics;
+    }
+
+    export type DetailedCaptureOptions = CaptureOptions & ({ contentHash: true } | { perceptualHash: true } | { metrics: true });
+
+    export type BlobCaptureOptions = CaptureOptions & { result: 'blob' };
+
+    export interface BlobResultWithDetails extends Omit<CaptureResultWithDetails, 'uri'> {
+        /**
+         * the capture result, as it is resolved without hashes.
+         */
+        blob: Blob;
+    }
+
+    /**
+     * stages of a capture, durations in milliseconds.
+     */
+    export interface CaptureStages<T> {
+        /** from the call to the UI batch running the capture */
+        uiWait: T;
+        /** waiting for a free capture worker */
+        queueWait: T;
+        resolve: T;
+        /** measuring content containers and tall view groups */
+        measure: T;
+        /** drawing the view and its special children, scaling */
+        draw: T;
+        /** waiting for PixelCopy */
+        pixelCopy: T;
+        hash: T;
+        /** compression, streamed results are Base64 encoded meanwhile */
+        encode: T;
+        /** flushing and closing the output */
+        write: T;
+        /** building the result string of buffered outputs, zip compression included */
+        base64: T;
+    }
+
+    export interface CaptureMetrics {
+        total: number;
+        stages: CaptureStages<number>;
+        bitmaps: number;
+        bitmapsReused: number;
+        bitmapBytes: number;
+        /** bytes of tmpfile results, chars of string results */
+        encodedBytes: number;
+    }
+
+    export interface CaptureHistogram {
+        count: number;
+        mean: number;
+        p50: number;
+        p90: number;
+        p99: number;
+        max: number;
+    }
+
+    export interface CaptureMetricsReport {
+        captures: number;
+        failures: number;
+        failuresByCode: { [code: string]: number };
+        total: CaptureHistogram;
+        stages: CaptureStages<CaptureHistogram>;
+        bitmapBytes: CaptureHistogram;
+        encodedBytes: CaptureHistogram;
+        bitmapReuseRate: number;
+    }
+
     export interface CaptureOptions {
         /**
          * (Android only) the file name of the file. Must be at least 3 characters long.
@@ -43,8 +127,12 @@ declare module 'react-native-view-shot' {
          *   lags (the string is sent over the bridge). N.B. This is not a data uri, use data-uri instead.
          " - data-uri": same as base64 but also includes the Data URI scheme header.
          " - zip-base64: compress data with zip deflate algorithm and than convert to base64 and return as a raw string."
+         " - blob" (Android): resolve with a Blob of the encoded image, held natively and never Base64 encoded.
+         *   raw blobs start with the same resolution header as raw tmpfiles.
+         " - memory" (Android): keep the encoded image in memory and resolve with a content:// URI the Image component
+         *   can display, without any disk write. Up to 32 MB of captures are kept, least recently used first.
          */
-        result?: 'tmpfile' | 'base64' | 'data-uri' | 'zip-base64';
+        result?: 'tmpfile' | 'base64' | 'data-uri' | 'zip-base64' | 'blob' | 'memory';
         /**
          * if true and when view is a ScrollView, the "content container" height will be evaluated instead of the
          * container height.
@@ -55,6 +143,69 @@ declare module 'react-native-view-shot' {
          * False by default, because it can have signoficant performance impact
          */
         handleGLSurfaceViewOnAndroid?: boolean;
+        /**
+         * (Android only) scheduling lane of the capture. "user-initiated" (default) captures always run before
+         * "background" ones. Captures are rejected with E_CAPTURE_QUEUE_FULL when the lane has no room left.
+         * continuous and update capture modes use "background" by default.
+         */
+        priority?: 'user-initiated' | 'background';
+        /**
+         * (Android only) keep the capture of the view and only redraw the areas that changed since the previous
+         * capture of the same view. Useful for views captured repeatedly, e.g. dashboards.
+         */
+        incremental?: boolean;
+        /**
+         * (Android only) give the previous result back right away when the view was not drawn, laid out or
+         * re-attached since the last capture with the same options. Applies to captureRef.
+         */
+        cache?: boolean;
+        /**
+         * (Android only) pixel format of the capture. "argb" (default) keeps full color and alpha, "rgb565" halves
+         * the memory and drops alpha, "grayscale" writes 8 bit luma (grayscale png, 1 byte per pixel raw) and
+         * "auto" uses "rgb565" when the captured view is opaque. The raw header becomes "width:height:rgb565|" or
+         * "width:height:grayscale|" for the smaller pixel formats.
+         */
+        bitmapConfig?: 'argb' | 'rgb565' | 'grayscale' | 'auto';
+        /**
+         * (Android only) encoder of png captures. "platform" (default) uses the single threaded system encoder,
+         * "parallel" filters and compresses bands of rows on all cores. Requires Android 5.0, older versions use
+         * the platform encoder.
+         */
+        pngEncoder?: 'platform' | 'parallel';
+        /**
+         * (Android only) zlib compression level of "zip-base64" results, 0 (no compression, fastest) to 9 (smallest).
+         * Defaults to zlib's default level, 6.
+         */
+        zipLevel?: number;
+        /**
+         * (Android only) zlib strategy of "zip-base64" results. "filtered" suits data with small variations,
+         * "huffman" skips string matching and is the fastest one.
+         */
+        zipStrategy?: 'default' | 'filtered' | 'huffman';
+        /**
+         * (Android only) compute an xxHash64 of the captured pixels while encoding. The capture then resolves with a
+         * CaptureResultWithDetails instead of a string. Equal hashes mean identical images.
+         */
+        contentHash?: boolean;
+        /**
+         * (Android only) compute a 64 bit dHash of the captured image while encoding. The capture then resolves with
+         * a CaptureResultWithDetails instead of a string. Hashes of similar images differ by a few bits.
+         */
+        perceptualHash?: boolean;
+        /**
+         * (Android only) resolve with the timings and memory use of the capture. The capture then resolves with a
+         * CaptureResultWithDetails instead of a string.
+         */
+        metrics?: boolean;
+        /**
+         * (Android only) identifier to cancel the capture with cancelCapture. Many captures can share it.
+         */
+        captureId?: string;
+        /**
+         * (Android only) reject with E_CAPTURE_TIMEOUT when the capture is not done after this many milliseconds,
+         * including the time spent queued.
+         */
+        timeoutMs?: number;
         /**
          * (iOS only) change the iOS snapshot strategy to use method renderInContext instead of drawViewHierarchyInRect 
          * which may help for some use cases.
@@ -110,18 +261,92 @@ declare module 'react-native-view-shot' {
      * @param {"react-native-view-shot".CaptureOptions} options
      * @return {Promise<string>} Returns a Promise of the image URI.
      */
+    export function captureRef<T>(viewRef: number | ReactInstance | RefObject<T>, options: BlobCaptureOptions & DetailedCaptureOptions): Promise<BlobResultWithDetails>
+    export function captureRef<T>(viewRef: number | ReactInstance | RefObject<T>, options: BlobCaptureOptions): Promise<Blob>
+    export function captureRef<T>(viewRef: number | ReactInstance | RefObject<T>, options: DetailedCaptureOptions): Promise<CaptureResultWithDetails>
     export function captureRef<T>(viewRef: number | ReactInstance | RefObject<T>, options?: CaptureOptions): Promise<string>
 
     /**
-     * This method release a previously captured uri. For tmpfile it will clean them out, for other result types it
-     * just won't do anything.
+     * capture many views with the same options. On Android the views are taken from the same UI state and encoded in
+     * parallel, other platforms capture them one by one. A fileName option gets the index of each view appended.
+     *
+     * @param {Array<number | React.ReactInstance | RefObject>} viewRefs
+     * @param {"react-native-view-shot".CaptureOptions} options
+     * @return {Promise<string[]>} Returns a Promise of the image URIs, in the order of the views. It rejects if any
+     * capture fails.
+     */
+    export function captureRefs<T>(viewRefs: Array<number | ReactInstance | RefObject<T>>, options: BlobCaptureOptions & DetailedCaptureOptions): Promise<BlobResultWithDetails[]>
+    export function captureRefs<T>(viewRefs: Array<number | ReactInstance | RefObject<T>>, options: BlobCaptureOptions): Promise<Blob[]>
+    export function captureRefs<T>(viewRefs: Array<number | ReactInstance | RefObject<T>>, options: DetailedCaptureOptions): Promise<CaptureResultWithDetails[]>
+    export function captureRefs<T>(viewRefs: Array<number | ReactInstance | RefObject<T>>, options?: CaptureOptions): Promise<string[]>
+
+    /**
+     * This method release a previously captured uri. For tmpfile and memory it will clean them out, blob results are
+     * closed, for other result types it just won't do anything.
      *
      * NB: the tmpfile captures are automatically cleaned out after the app closes, so you might not have to worry
      *  about this unless advanced usecases. The ViewShot component will use it each time you capture more than once
      * (useful for continuous capture to not leak files).
-     * @param {string} uri
+     * @param {string | Blob} uri
+     */
+    export function releaseCapture(uri: string | Blob): void
+
+    /**
+     * (Android only) cancel the unfinished captures started with this captureId option. Their promises reject with
+     * E_CAPTURE_CANCELLED.
+     */
+    export function cancelCapture(captureId: string): void
+
+    export interface CaptureQueueDepth {
+        userInitiated: number;
+        background: number;
+        active: number;
+        parallelism: number;
+        capacity: number;
+        rejected: number;
+        coalesced: number;
+    }
+
+    /**
+     * (Android only) current state of the native capture scheduler: captures waiting in each lane, captures running
+     * and captures rejected so far because the queue was full. coalesced counts the captureRef calls given the result
+     * of an identical capture in flight.
+     */
+    export function getCaptureQueueDepth(): Promise<CaptureQueueDepth>
+
+    /**
+     * (Android only) aggregated metrics of the successful captures since the last reset. Durations are in
+     * milliseconds, percentiles are accurate to a factor of two.
+     */
+    export function getCaptureMetrics(): Promise<CaptureMetricsReport>
+
+    /**
+     * (Android only) clear the aggregated capture metrics.
+     */
+    export function resetCaptureMetrics(): void
+
+    export interface CaptureSessionOptions extends CaptureOptions {
+        /**
+         * maximum amount of captures per second, 30 by default.
+         */
+        fps?: number;
+    }
+
+    export interface CaptureSession {
+        stop(): void;
+    }
+
+    /**
+     * (Android only) capture the view natively on display frames, up to options.fps per second. Frames are dropped
+     * while the previous one is still encoding, and frames identical to the previous one are not delivered.
+     * The "continuous" capture mode uses it on Android.
      */
-    export function releaseCapture(uri: string): void
+    export function startCaptureSession<T>(
+        viewRef: number | ReactInstance | RefObject<T>,
+        options: CaptureSessionOptions | undefined,
+        onCapture: (uri: string) => void,
+        onCaptureFailure?: (error: Error) => void,
+    ): CaptureSession
 
     /**
      * This method will capture the contents of the currently displayed screen as a native hardware screenshot. It does
@@ -133,5 +358,8 @@ declare module 'react-native-view-shot' {
      * @param {"react-native-view-shot".CaptureOptions} options
      * @return {Promise<string>}
      */
+    export function captureScreen(options: BlobCaptureOptions & DetailedCaptureOptions): Promise<BlobResultWithDetails>
+    export function captureScreen(options: BlobCaptureOptions): Promise<Blob>
+    export function captureScreen(options: DetailedCaptureOptions): Promise<CaptureResultWithDetails>
     export function captureScreen(options?: CaptureOptions): Promise<string>
 }
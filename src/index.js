@@ -1,7 +1,14 @@
 // @flow
 import React, { Component } from "react";
-import { View, Platform, findNodeHandle, StyleProp } from "react-native";
+import {
+  View,
+  Platform,
+  findNodeHandle,
+  StyleProp,
+  DeviceEventEmitter,
+} from "react-native";
 import RNViewShot from "./RNViewShot";
+import toBlobResult from "./BlobResult";
 import type { ViewStyleProp } from "react-native/Libraries/StyleSheet/StyleSheet";
 import type { LayoutEvent } from "react-native/Libraries/Types/CoreEventTypes";
 
@@ -12,9 +19,21 @@ type Options = {
   height?: number,
   format: "png" | "jpg" | "webm" | "raw",
   quality: number,
-  result: "tmpfile" | "base64" | "data-uri" | "zip-base64",
+  result: "tmpfile" | "base64" | "data-uri" | "zip-base64" | "blob" | "memory",
   snapshotContentContainer: boolean,
   handleGLSurfaceViewOnAndroid: boolean,
+  priority?: "user-initiated" | "background",
+  incremental?: boolean,
+  cache?: boolean,
+  bitmapConfig?: "argb" | "rgb565" | "grayscale" | "auto",
+  pngEncoder?: "platform" | "parallel",
+  zipLevel?: number,
+  zipStrategy?: "default" | "filtered" | "huffman",
+  contentHash?: boolean,
+  perceptualHash?: boolean,
+  metrics?: boolean,
+  captureId?: string,
+  timeoutMs?: number,
 };
 
 if (!RNViewShot) {
@@ -28,9 +47,17 @@ const acceptedFormats = ["png", "jpg"].concat(
 );
 
 const acceptedResults = ["tmpfile", "base64", "data-uri"].concat(
-  Platform.OS === "android" ? ["zip-base64"] : []
+  Platform.OS === "android" ? ["zip-base64", "blob", "memory"] : []
 );
 
+const acceptedPriorities = ["user-initiated", "background"];
+
+const acceptedBitmapConfigs = ["argb", "rgb565", "grayscale", "auto"];
+
+const acceptedPngEncoders = ["platform", "parallel"];
+
+const acceptedZipStrategies = ["default", "filtered", "huffman"];
+
 const defaultOptions = {
   format: "png",
   quality: 1,
@@ -77,6 +104,88 @@ function validateOptions(input: ?$Shape<Options>): {
   if (typeof options.handleGLSurfaceViewOnAndroid !== "boolean") {
     errors.push("option handleGLSurfaceViewOnAndroid should be a boolean");
   }
+  if ("incremental" in options && typeof options.incremental !== "boolean") {
+    errors.push("option incremental should be a boolean");
+    delete options.incremental;
+  }
+  if ("cache" in options && typeof options.cache !== "boolean") {
+    errors.push("option cache should be a boolean");
+    delete options.cache;
+  }
+  if (
+    "priority" in options &&
+    acceptedPriorities.indexOf(options.priority) === -1
+  ) {
+    errors.push(
+      "option priority should be one of: " + acceptedPriorities.join(" | ")
+    );
+    delete options.priority;
+  }
+  if (
+    "bitmapConfig" in options &&
+    acceptedBitmapConfigs.indexOf(options.bitmapConfig) === -1
+  ) {
+    errors.push(
+      "option bitmapConfig should be one of: " +
+        acceptedBitmapConfigs.join(" | ")
+    );
+    delete options.bitmapConfig;
+  }
+  if (
+    "pngEncoder" in options &&
+    acceptedPngEncoders.indexOf(options.pngEncoder) === -1
+  ) {
+    errors.push(
+      "option pngEncoder should be one of: " + acceptedPngEncoders.join(" | ")
+    );
+    delete options.pngEncoder;
+  }
+  if (
+    "zipLevel" in options &&
+    (typeof options.zipLevel !== "number" ||
+      options.zipLevel % 1 !== 0 ||
+      options.zipLevel < 0 ||
+      options.zipLevel > 9)
+  ) {
+    errors.push("option zipLevel should be an integer between 0 and 9");
+    delete options.zipLevel;
+  }
+  if (
+    "zipStrategy" in options &&
+    acceptedZipStrategies.indexOf(options.zipStrategy) === -1
+  ) {
+    errors.push(
+      "option zipStrategy should be one of: " +
+        acceptedZipStrategies.join(" | ")
+    );
+    delete options.zipStrategy;
+  }
+  if ("contentHash" in options && typeof options.contentHash !== "boolean") {
+    errors.push("option contentHash should be a boolean");
+    delete options.contentHash;
+  }
+  if (
+    "perceptualHash" in options &&
+    typeof options.perceptualHash !== "boolean"
+  ) {
+    errors.push("option perceptualHash should be a boolean");
+    delete options.perceptualHash;
+  }
+  if ("metrics" in options && typeof options.metrics !== "boolean") {
+    errors.push("option metrics should be a boolean");
+    delete options.metrics;
+  }
+  if ("captureId" in options && typeof options.captureId !== "string") {
+    errors.push("option captureId should be a string");
+    delete options.captureId;
+  }
+  if (
+    "timeoutMs" in options &&
+    (typeof options.timeoutMs !== "number" || options.timeoutMs < 0)
+  ) {
+    errors.push("option timeoutMs should be a positive number");
+    delete options.timeoutMs;
+  }
   if (acceptedFormats.indexOf(options.format) === -1) {
     options.format = defaultOptions.format;
     errors.push(
@@ -106,11 +215,9 @@ export function ensureModuleIsLoaded() {
   }
 }
 
-export function captureRef<T: React$ElementType>(
-  view: number | ?View | React$Ref<T>,
-  optionsObject?: Object
-): Promise<string> {
-  ensureModuleIsLoaded();
+function resolveViewTag<T: React$ElementType>(
+  view: number | ?View | React$Ref<T>
+): number | Error {
   if (
     view &&
     typeof view === "object" &&
@@ -121,18 +228,30 @@ export function captureRef<T: React$ElementType>(
     // $FlowFixMe view is a ref
     view = view.current;
     if (!view) {
-      return Promise.reject(new Error("ref.current is null"));
+      return new Error("ref.current is null");
     }
   }
   if (typeof view !== "number") {
     const node = findNodeHandle(view);
     if (!node) {
-      return Promise.reject(
-        new Error("findNodeHandle failed to resolve view=" + String(view))
+      return new Error(
+        "findNodeHandle failed to resolve view=" + String(view)
       );
     }
     view = node;
   }
+  return view;
+}
+
+export function captureRef<T: React$ElementType>(
+  view: number | ?View | React$Ref<T>,
+  optionsObject?: Object
+): Promise<string> {
+  ensureModuleIsLoaded();
+  const tag = resolveViewTag(view);
+  if (tag instanceof Error) {
+    return Promise.reject(tag);
+  }
   const { options, errors } = validateOptions(optionsObject);
   if (__DEV__ && errors.length > 0) {
     console.warn(
@@ -140,11 +259,50 @@ export function captureRef<T: React$ElementType>(
         errors.map((e) => `- ${e}`).join("\n")
     );
   }
-  return RNViewShot.captureRef(view, options);
+  if (options.result === "blob") {
+    return RNViewShot.captureRef(tag, options).then(toBlobResult);
+  }
+  return RNViewShot.captureRef(tag, options);
 }
 
-export function releaseCapture(uri: string): void {
-  if (typeof uri !== "string") {
+// captures all the views from the same UI state, results are in the order of the views.
+// the batch rejects if any capture fails.
+export function captureRefs<T: React$ElementType>(
+  views: Array<number | ?View | React$Ref<T>>,
+  optionsObject?: Object
+): Promise<Array<string>> {
+  ensureModuleIsLoaded();
+  if (!RNViewShot.captureRefs) {
+    return Promise.all(views.map((view) => captureRef(view, optionsObject)));
+  }
+  const tags = [];
+  for (const view of views) {
+    const tag = resolveViewTag(view);
+    if (tag instanceof Error) {
+      return Promise.reject(tag);
+    }
+    tags.push(tag);
+  }
+  const { options, errors } = validateOptions(optionsObject);
+  if (__DEV__ && errors.length > 0) {
+    console.warn(
+      "react-native-view-shot: bad options:\n" +
+        errors.map((e) => `- ${e}`).join("\n")
+    );
+  }
+  if (options.result === "blob") {
+    return RNViewShot.captureRefs(tags, options).then((results) =>
+      results.map(toBlobResult)
+    );
+  }
+  return RNViewShot.captureRefs(tags, options);
+}
+
+export function releaseCapture(uri: string | Blob): void {
+  if (uri && typeof uri === "object" && typeof uri.close === "function") {
+    // blob results are released by closing them
+    uri.close();
+  } else if (typeof uri !== "string") {
     if (__DEV__) {
       console.warn("Invalid argument to releaseCapture. Got: " + uri);
     }
@@ -153,6 +311,126 @@ export function releaseCapture(uri: string): void {
   }
 }
 
+// rejects the unfinished captures started with this captureId option.
+export function cancelCapture(captureId: string): void {
+  ensureModuleIsLoaded();
+  if (RNViewShot.cancelCapture) {
+    RNViewShot.cancelCapture(captureId);
+  }
+}
+
+export function getCaptureQueueDepth(): Promise<{
+  userInitiated: number,
+  background: number,
+  active: number,
+  parallelism: number,
+  capacity: number,
+  rejected: number,
+  coalesced: number,
+}> {
+  ensureModuleIsLoaded();
+  if (!RNViewShot.getCaptureQueueDepth) {
+    return Promise.reject(
+      new Error("getCaptureQueueDepth is not supported on " + Platform.OS)
+    );
+  }
+  return RNViewShot.getCaptureQueueDepth();
+}
+
+// aggregated timings and sizes of the captures since the last reset.
+export function getCaptureMetrics(): Promise<Object> {
+  ensureModuleIsLoaded();
+  if (!RNViewShot.getCaptureMetrics) {
+    return Promise.reject(
+      new Error("getCaptureMetrics is not supported on " + Platform.OS)
+    );
+  }
+  return RNViewShot.getCaptureMetrics();
+}
+
+export function resetCaptureMetrics(): void {
+  ensureModuleIsLoaded();
+  if (RNViewShot.resetCaptureMetrics) {
+    RNViewShot.resetCaptureMetrics();
+  }
+}
+
+export type CaptureSession = {
+  stop: () => void,
+};
+
+let nextCaptureSessionId = 1;
+
+export function isCaptureSessionSupported(): boolean {
+  return !!RNViewShot && !!RNViewShot.startCaptureSession;
+}
+
+// captures the view natively on display frames, up to options.fps per second.
+// frames that did not change are not delivered.
+export function startCaptureSession<T: React$ElementType>(
+  view: number | ?View | React$Ref<T>,
+  optionsObject: ?Object,
+  onCapture: (uri: string) => void,
+  onCaptureFailure?: (e: Error) => void
+): CaptureSession {
+  ensureModuleIsLoaded();
+  const fail = (e: Error) => {
+    if (onCaptureFailure) onCaptureFailure(e);
+  };
+  if (!isCaptureSessionSupported()) {
+    fail(new Error("startCaptureSession is not supported on " + Platform.OS));
+    return { stop: () => {} };
+  }
+  const tag = resolveViewTag(view);
+  if (tag instanceof Error) {
+    fail(tag);
+    return { stop: () => {} };
+  }
+  const { fps, ...rest } = optionsObject || {};
+  const { options, errors } = validateOptions(rest);
+  if (__DEV__ && errors.length > 0) {
+    console.warn(
+      "react-native-view-shot: bad options:\n" +
+        errors.map((e) => `- ${e}`).join("\n")
+    );
+  }
+  if (fps !== undefined) {
+    if (typeof fps === "number" && fps > 0) {
+      options.fps = fps;
+    } else if (__DEV__) {
+      console.warn(
+        "react-native-view-shot: option fps should be a positive number"
+      );
+    }
+  }
+
+  const sessionId = nextCaptureSessionId++;
+  let stopped = false;
+  const subscriptions = [
+    DeviceEventEmitter.addListener("RNViewShotCaptureSessionFrame", (e) => {
+      if (e.sessionId === sessionId && !stopped) onCapture(e.uri);
+    }),
+    DeviceEventEmitter.addListener("RNViewShotCaptureSessionError", (e) => {
+      if (e.sessionId === sessionId && !stopped) {
+        const error: Object = new Error(e.message);
+        error.code = e.code;
+        fail(error);
+      }
+    }),
+  ];
+  const stop = () => {
+    if (stopped) return;
+    stopped = true;
+    subscriptions.forEach((s) => s.remove());
+    RNViewShot.stopCaptureSession(sessionId);
+  };
+  RNViewShot.startCaptureSession(sessionId, tag, options).catch((e) => {
+    if (!stopped) fail(e);
+    stop();
+  });
+  return { stop };
+}
+
 export function captureScreen(optionsObject?: Options): Promise<string> {
   ensureModuleIsLoaded();
   const { options, errors } = validateOptions(optionsObject);
@@ -162,6 +440,9 @@ export function captureScreen(optionsObject?: Options): Promise<string> {
         errors.map((e) => `- ${e}`).join("\n")
     );
   }
+  if (options.result === "blob") {
+    return RNViewShot.captureScreen(options).then(toBlobResult);
+  }
   return RNViewShot.captureScreen(options);
 }
 
@@ -202,6 +483,7 @@ export default class ViewShot extends Component<Props> {
   root: ?View;
 
   _raf: *;
+  _session: ?CaptureSession;
   lastCapturedURI: ?string;
 
   resolveFirstLayout: (layout: Object) => void;
@@ -214,7 +496,14 @@ export default class ViewShot extends Component<Props> {
       .then(() => {
         const { root } = this;
         if (!root) return neverEndingPromise; // component is unmounted, you never want to hear back from the promise
-        return captureRef(root, this.props.options);
+        const { captureMode, options } = this.props;
+        // automatic captures should not delay the ones explicitly requested by the user
+        return captureRef(
+          root,
+          captureMode === "continuous" || captureMode === "update"
+            ? { priority: "background", ...options }
+            : options
+        );
       })
       .then(
         (uri: string) => {
@@ -229,8 +518,8 @@ export default class ViewShot extends Component<Props> {
 
   onCapture = (uri: string) => {
     if (!this.root) return;
-    if (this.lastCapturedURI) {
-      // schedule releasing the previous capture
+    if (this.lastCapturedURI && this.lastCapturedURI !== uri) {
+      // schedule releasing the previous capture, cached captures may give the same uri again
       setTimeout(releaseCapture, 500, this.lastCapturedURI);
     }
     this.lastCapturedURI = uri;
@@ -246,7 +535,25 @@ export default class ViewShot extends Component<Props> {
 
   syncCaptureLoop = (captureMode: ?string) => {
     cancelAnimationFrame(this._raf);
-    if (captureMode === "continuous") {
+    if (this._session) {
+      this._session.stop();
+      this._session = null;
+    }
+    if (captureMode === "continuous" && isCaptureSessionSupported()) {
+      // frames are driven natively, results come back as events
+      const pending = { stop: () => {} };
+      this._session = pending;
+      this.firstLayoutPromise.then(() => {
+        const { root } = this;
+        if (this._session !== pending || !root) return;
+        this._session = startCaptureSession(
+          root,
+          { priority: "background", ...this.props.options },
+          this.onCapture,
+          this.onCaptureFailure
+        );
+      });
+    } else if (captureMode === "continuous") {
       let previousCaptureURI = "-"; // needs to capture at least once at first, so we use "-" arbitrary string
       const loop = () => {
         this._raf = requestAnimationFrame(loop);
@@ -0,0 +1,54 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content and perceptual hashes of a screen, fed by bands like captures are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HashBenchmark {
+    @Param({"1080x1920", "1440x3120"})
+    public String size;
+
+    private int width;
+    private int height;
+    private int[] argb;
+
+    @Setup
+    public void setUp() {
+        final int[] dimensions = SyntheticScreens.parseSize(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        argb = SyntheticScreens.argb(width, height);
+    }
+
+    @Benchmark
+    public long content() {
+        return hash(true, false).getContentHash();
+    }
+
+    @Benchmark
+    public long perceptual() {
+        return hash(false, true).getPerceptualHash();
+    }
+
+    private ImageHasher hash(final boolean content, final boolean perceptual) {
+        final ImageHasher hasher = new ImageHasher(width, height, content, perceptual);
+        final int band = Math.max(1, 64 * 1024 / width);
+        for (int y = 0; y < height; y += band) {
+            hasher.update(argb, y * width, Math.min(band, height - y));
+        }
+        return hasher;
+    }
+}
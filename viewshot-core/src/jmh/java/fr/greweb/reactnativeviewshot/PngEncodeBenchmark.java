@@ -0,0 +1,74 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoding of a whole screen, streamed by tiles or on all cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PngEncodeBenchmark {
+    @Param({"1080x1920", "1440x3120"})
+    public String size;
+
+    private int width;
+    private int height;
+    private int[] argb;
+    private DeflaterPool deflaters;
+
+    @Setup
+    public void setUp() {
+        final int[] dimensions = SyntheticScreens.parseSize(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        argb = SyntheticScreens.argb(width, height);
+        deflaters = new DeflaterPool();
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        return stream(false);
+    }
+
+    @Benchmark
+    public long streamedGrayscale() throws IOException {
+        return stream(true);
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        final SyntheticScreens.CountingOutputStream out = new SyntheticScreens.CountingOutputStream();
+        new ParallelPngEncoder(deflaters).encode(new ParallelPngEncoder.RowSource() {
+            @Override
+            public void getRows(final int[] rows, final int y, final int count) {
+                System.arraycopy(argb, y * width, rows, 0, count * width);
+            }
+        }, width, height, false, out);
+        return out.count;
+    }
+
+    /**
+     * Rows are fed by tiles of 256 lines, like tall captures.
+     */
+    private long stream(final boolean grayscale) throws IOException {
+        final SyntheticScreens.CountingOutputStream out = new SyntheticScreens.CountingOutputStream();
+        final PngStreamWriter png = new PngStreamWriter(out, width, height, Deflater.DEFAULT_COMPRESSION, grayscale);
+        for (int y = 0; y < height; y += 256) {
+            png.writeRows(argb, y * width, width, Math.min(256, height - y));
+        }
+        png.finish();
+        return out.count;
+    }
+}
@@ -0,0 +1,79 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Contention of the pools shared by all captures, leased and given back by four threads at
+ * once. Sizes are those of 1080x1920 captures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class PoolBenchmark {
+    /**
+     * Byte sizes of ARGB, RGB_565 and grayscale captures, and of a PNG of the screen.
+     */
+    private static final int[] SIZES = {1080 * 1920 * 4, 1080 * 1920 * 2, 1080 * 1920, 1 << 20};
+
+    private BufferPool buffers;
+    private DeflaterPool deflaters;
+    private StripedLruPool<Integer, byte[]> arrays;
+
+    @Setup
+    public void setUp() {
+        buffers = new BufferPool();
+        deflaters = new DeflaterPool();
+        arrays = new StripedLruPool<>(BufferPool.DEFAULT_BYTE_BUDGET, new StripedLruPool.Evictor<byte[]>() {
+            @Override
+            public void evict(final byte[] value) {
+            }
+        });
+    }
+
+    @Benchmark
+    public int buffers() {
+        final byte[] buffer = buffers.lease(nextSize());
+        buffers.release(buffer);
+        return buffer.length;
+    }
+
+    @Benchmark
+    public Deflater deflaters() {
+        final Deflater deflater = deflaters.obtain(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, false);
+        deflaters.release(deflater);
+        return deflater;
+    }
+
+    /**
+     * Bookkeeping of the bitmap pool, falling back to the best fit like bitmap reconfiguration.
+     */
+    @Benchmark
+    public int stripedLru() {
+        final int size = nextSize();
+        byte[] array = arrays.take(size);
+        if (array == null) {
+            array = arrays.takeBestFit(size, 2L * size);
+        }
+        if (array == null) {
+            array = new byte[size];
+        }
+        arrays.offer(array.length, array, array.length);
+        return array.length;
+    }
+
+    private static int nextSize() {
+        return SIZES[ThreadLocalRandom.current().nextInt(SIZES.length)];
+    }
+}
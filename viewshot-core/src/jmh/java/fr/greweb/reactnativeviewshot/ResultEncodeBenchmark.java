@@ -0,0 +1,82 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Encoding of RAW captures into {@code base64} and {@code zip-base64} result strings, from the
+ * pooled capture buffer to the string handed to the bridge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultEncodeBenchmark {
+    @Param({"1080x1920", "1440x3120"})
+    public String size;
+
+    private int width;
+    private int height;
+    private byte[] rgba;
+    private BufferPool buffers;
+    private DeflaterPool deflaters;
+
+    @Setup
+    public void setUp() {
+        final int[] dimensions = SyntheticScreens.parseSize(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        rgba = SyntheticScreens.rgba(SyntheticScreens.argb(width, height));
+        buffers = new BufferPool();
+        deflaters = new DeflaterPool();
+    }
+
+    @Benchmark
+    public int base64() throws IOException {
+        final ReusableByteArrayOutputStream raw = capture();
+        final String header = RawFileOutputStream.header(width, height, null);
+        final Base64StringOutputStream data = new Base64StringOutputStream(raw.size(), header.length());
+        data.append(header);
+        data.write(raw.innerBuffer(), 0, raw.size());
+        buffers.release(raw.innerBuffer());
+        return data.build().length();
+    }
+
+    @Benchmark
+    public int zipBase64Parallel() throws IOException {
+        final ReusableByteArrayOutputStream raw = capture();
+        final Base64StringOutputStream data = new Base64StringOutputStream(raw.size() / 2, 0);
+        new ParallelDeflater(deflaters, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY)
+                .deflate(raw.innerBuffer(), 0, raw.size(), data);
+        buffers.release(raw.innerBuffer());
+        return data.build().length();
+    }
+
+    @Benchmark
+    public int zipBase64Serial() throws IOException {
+        final ReusableByteArrayOutputStream raw = capture();
+        final Base64StringOutputStream data = new Base64StringOutputStream(raw.size() / 2, 0);
+        deflaters.deflate(raw.innerBuffer(), 0, raw.size(), Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, data);
+        buffers.release(raw.innerBuffer());
+        return data.build().length();
+    }
+
+    /**
+     * Copy the pixels into a pooled buffer, like copyPixelsToBuffer does for RAW captures.
+     */
+    private ReusableByteArrayOutputStream capture() {
+        final ReusableByteArrayOutputStream os = new ReusableByteArrayOutputStream(buffers.lease(rgba.length));
+        os.asBuffer(rgba.length).put(rgba);
+        os.setSize(rgba.length);
+        return os;
+    }
+}
@@ -0,0 +1,55 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the capture scheduler: a burst of empty captures is queued and awaited, like a
+ * {@code captureRefs} batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SchedulerBenchmark {
+    @Param({"16", "64"})
+    public int burst;
+
+    private CaptureScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        scheduler = new CaptureScheduler(CaptureScheduler.DEFAULT_PARALLELISM, burst);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public long burst() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(burst);
+        final Runnable capture = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        for (int i = 0; i < burst; i++) {
+            scheduler.execute(i % 2 == 0 ? CaptureScheduler.Priority.USER_INITIATED : CaptureScheduler.Priority.BACKGROUND, capture);
+        }
+        done.await();
+        return done.getCount();
+    }
+}
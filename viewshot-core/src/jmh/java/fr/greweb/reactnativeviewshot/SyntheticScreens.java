@@ -0,0 +1,93 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Screen-like images for the benchmarks: flat backgrounds, cards, lines of text and a photo
+ * area, so encoders see the mix of runs and noise of real captures.
+ */
+final class SyntheticScreens {
+    private SyntheticScreens() {
+    }
+
+    /**
+     * @param size {@code <width>x<height>}
+     * @return width and height
+     */
+    static int[] parseSize(final String size) {
+        final int x = size.indexOf('x');
+        return new int[]{Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))};
+    }
+
+    /**
+     * Non premultiplied ARGB pixels of a {@code width} x {@code height} screen.
+     */
+    static int[] argb(final int width, final int height) {
+        final Random random = new Random(width * 31L + height);
+        final int[] pixels = new int[width * height];
+        final int photoTop = height / 8;
+        final int photoBottom = height * 3 / 8;
+        final int lineHeight = Math.max(8, height / 60);
+
+        for (int y = 0; y < height; y++) {
+            final int row = y * width;
+            final boolean inText = y > photoBottom && (y / lineHeight) % 2 == 0 && (y % lineHeight) > lineHeight / 4;
+
+            for (int x = 0; x < width; x++) {
+                final int pixel;
+                if (y < photoTop / 2) {
+                    // app bar
+                    pixel = 0xFF3F51B5;
+                } else if (y >= photoTop && y < photoBottom) {
+                    // photo, smooth gradients with sensor noise
+                    final int noise = random.nextInt(16);
+                    final int r = Math.min(255, x * 255 / width + noise);
+                    final int g = Math.min(255, (y - photoTop) * 255 / (photoBottom - photoTop) + noise);
+                    final int b = Math.min(255, 128 + noise);
+                    pixel = 0xFF000000 | (r << 16) | (g << 8) | b;
+                } else if (inText && x > width / 16 && x < width * 15 / 16) {
+                    // glyphs, mostly background with dark strokes and antialiasing
+                    final int v = random.nextInt(4) == 0 ? random.nextInt(256) : 255;
+                    pixel = 0xFF000000 | (v << 16) | (v << 8) | v;
+                } else {
+                    pixel = 0xFFFAFAFA;
+                }
+                pixels[row + x] = pixel;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * RGBA bytes, as Bitmap#copyPixelsToBuffer writes ARGB_8888 bitmaps into RAW results.
+     */
+    static byte[] rgba(final int[] argb) {
+        final byte[] bytes = new byte[argb.length * 4];
+        for (int i = 0, o = 0; i < argb.length; i++) {
+            final int pixel = argb[i];
+            bytes[o++] = (byte) (pixel >>> 16);
+            bytes[o++] = (byte) (pixel >>> 8);
+            bytes[o++] = (byte) pixel;
+            bytes[o++] = (byte) (pixel >>> 24);
+        }
+        return bytes;
+    }
+
+    /**
+     * Discards the output, counting the written bytes so the work cannot be optimized away.
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
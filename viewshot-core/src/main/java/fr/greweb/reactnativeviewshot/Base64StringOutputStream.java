@@ -0,0 +1,190 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stream that Base64 encodes (no wrap, padded) written bytes on the fly into a pre-sized char
+ * buffer, so compressed image data is never held as a separate byte array and the final string
+ * is the only full size allocation. ASCII headers (data uri scheme, RAW resolution) can be
+ * appended inline before the data.
+ */
+public class Base64StringOutputStream extends OutputStream {
+    //region Constants
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    /**
+     * Char buffers up to that size (2Mb) are kept for the next encoding.
+     */
+    private static final int MAX_CACHED_CHARS = 1024 * 1024;
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Single idle char buffer shared by all capture threads, so at most
+     * {@link #MAX_CACHED_CHARS} chars are retained whatever the amount of workers.
+     */
+    private static final AtomicReference<char[]> cachedChars = new AtomicReference<>();
+    //endregion
+
+    //region Class members
+    private char[] chars;
+    private int count;
+    /**
+     * Bytes waiting for a complete 3 bytes group.
+     */
+    private int carry;
+    private int carryLength;
+    private long byteCount;
+    private boolean finished;
+    //endregion
+
+    //region Constructors
+    /**
+     * @param expectedBytes amount of bytes expected to be written, used to pre-size the buffer
+     * @param headerLength  amount of header chars expected to be appended
+     */
+    public Base64StringOutputStream(final int expectedBytes, final int headerLength) {
+        final int capacity = (int) Math.min(MAX_ARRAY_SIZE, headerLength + encodedLength(expectedBytes));
+        final char[] cached = cachedChars.get();
+
+        if (cached != null && cached.length >= capacity && cachedChars.compareAndSet(cached, null)) {
+            chars = cached;
+        } else {
+            chars = new char[Math.max(capacity, 4)];
+        }
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Amount of chars needed to encode {@code bytes} bytes.
+     */
+    public static long encodedLength(final long bytes) {
+        return ((bytes + 2) / 3) * 4;
+    }
+
+    /**
+     * Append ASCII text as is, only allowed on a 3 bytes group boundary.
+     */
+    public Base64StringOutputStream append(final String text) {
+        if (finished || carryLength != 0) {
+            throw new IllegalStateException("Text can only be appended between complete Base64 groups");
+        }
+
+        ensureCapacity(count + text.length());
+        text.getChars(0, text.length(), chars, count);
+        count += text.length();
+        return this;
+    }
+
+    /**
+     * Amount of bytes written so far, excluding appended text.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    @Override
+    public void write(final int b) {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) {
+        if (finished) {
+            throw new IllegalStateException("Stream is already finished");
+        }
+
+        byteCount += len;
+
+        // complete the pending group first
+        while (carryLength > 0 && carryLength < 3 && len > 0) {
+            carry = (carry << 8) | (b[off++] & 0xff);
+            carryLength++;
+            len--;
+        }
+        if (carryLength == 3) {
+            ensureCapacity(count + 4);
+            emit(carry);
+            carry = 0;
+            carryLength = 0;
+        }
+
+        final int groups = len / 3;
+        ensureCapacity(count + groups * 4);
+
+        final char[] out = chars;
+        int o = count;
+        final int end = off + groups * 3;
+        for (int i = off; i < end; i += 3) {
+            final int group = ((b[i] & 0xff) << 16) | ((b[i + 1] & 0xff) << 8) | (b[i + 2] & 0xff);
+            out[o] = ALPHABET[(group >>> 18) & 0x3f];
+            out[o + 1] = ALPHABET[(group >>> 12) & 0x3f];
+            out[o + 2] = ALPHABET[(group >>> 6) & 0x3f];
+            out[o + 3] = ALPHABET[group & 0x3f];
+            o += 4;
+        }
+        count = o;
+
+        for (int i = end; i < off + len; i++) {
+            carry = (carry << 8) | (b[i] & 0xff);
+            carryLength++;
+        }
+    }
+
+    /**
+     * Write padding for the last incomplete group, further writes are not allowed.
+     */
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+
+        ensureCapacity(count + 4);
+        if (carryLength == 1) {
+            emit(carry << 16);
+            chars[count - 2] = '=';
+            chars[count - 1] = '=';
+        } else if (carryLength == 2) {
+            emit(carry << 8);
+            chars[count - 1] = '=';
+        }
+        carryLength = 0;
+    }
+
+    /**
+     * Finish the encoding and create the result string. The stream can not be used afterwards,
+     * its char buffer is kept for the next encoding when none is kept yet.
+     */
+    public String build() {
+        close();
+
+        final String result = new String(chars, 0, count);
+        if (chars.length <= MAX_CACHED_CHARS) {
+            cachedChars.compareAndSet(null, chars);
+        }
+        chars = null;
+        return result;
+    }
+    //endregion
+
+    //region Implementation
+    private void emit(final int group) {
+        chars[count] = ALPHABET[(group >>> 18) & 0x3f];
+        chars[count + 1] = ALPHABET[(group >>> 12) & 0x3f];
+        chars[count + 2] = ALPHABET[(group >>> 6) & 0x3f];
+        chars[count + 3] = ALPHABET[group & 0x3f];
+        count += 4;
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        if (minCapacity <= chars.length) return;
+        if (minCapacity < 0) throw new OutOfMemoryError();
+
+        // prediction was too small, grow by half to avoid too many copies
+        final long grown = Math.max(minCapacity, chars.length + (chars.length >> 1));
+        chars = Arrays.copyOf(chars, (int) Math.min(MAX_ARRAY_SIZE, grown));
+    }
+    //endregion
+}
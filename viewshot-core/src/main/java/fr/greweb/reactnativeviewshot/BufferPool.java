@@ -0,0 +1,212 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Thread-safe pool of output buffers. Buffers are leased for the duration of a single capture,
+ * allocated at the requested size, grouped in power of two size classes and retained up to a
+ * global byte budget. The pool also learns the encoded size per pixel of each format, so
+ * buffers can be leased at the right size up front instead of growing while the image is
+ * compressed.
+ */
+public class BufferPool {
+    //region Constants
+    /**
+     * Smallest size class, 64Kb.
+     */
+    private static final int MIN_CLASS_SHIFT = 16;
+    /**
+     * Biggest size class, 64Mb. Bigger buffers are never retained.
+     */
+    private static final int MAX_CLASS_SHIFT = 26;
+    /**
+     * Default amount of retained bytes.
+     */
+    public static final long DEFAULT_BYTE_BUDGET = 32L * 1024 * 1024;
+    /**
+     * Weight of the latest sample in the encoded size moving average.
+     */
+    private static final double PREDICTION_WEIGHT = 0.25;
+    /**
+     * Extra room on top of the predicted size, growing the buffer costs a full copy.
+     */
+    private static final double PREDICTION_HEADROOM = 1.15;
+    /**
+     * Max array size supported by VMs.
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    //endregion
+
+    //region Class members
+    private final ArrayDeque<byte[]>[] classes = newClasses(MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1);
+    private final Map<Integer, Double> bytesPerPixel = new HashMap<>();
+    private final long byteBudget;
+
+    private long retainedBytes;
+    private long hits;
+    private long misses;
+    //endregion
+
+    //region Constructors
+    public BufferPool() {
+        this(DEFAULT_BYTE_BUDGET);
+    }
+
+    /**
+     * @param byteBudget maximum amount of bytes retained by idle buffers
+     */
+    public BufferPool(final long byteBudget) {
+        this.byteBudget = byteBudget;
+
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayDeque<>();
+        }
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Lease a buffer of at least {@code minSize} bytes. The buffer must be given back with
+     * {@link #release(byte[])} once the capture does not need it anymore.
+     */
+    public byte[] lease(final int minSize) {
+        final int shift = classShiftFor(minSize);
+
+        synchronized (this) {
+            if (shift <= MAX_CLASS_SHIFT) {
+                // buffers are allocated at their exact size, the class below may hold big enough ones
+                final int floor = floorLog2(Math.max(minSize, 1 << MIN_CLASS_SHIFT));
+                if (floor < shift) {
+                    final Iterator<byte[]> it = classes[floor - MIN_CLASS_SHIFT].iterator();
+                    while (it.hasNext()) {
+                        final byte[] buffer = it.next();
+                        if (buffer.length >= minSize) {
+                            it.remove();
+                            retainedBytes -= buffer.length;
+                            hits++;
+                            return buffer;
+                        }
+                    }
+                }
+
+                // a buffer of the next class is still a better deal than a fresh allocation
+                final int last = Math.min(shift + 1, MAX_CLASS_SHIFT);
+                for (int s = shift; s <= last; s++) {
+                    final byte[] buffer = classes[s - MIN_CLASS_SHIFT].pollFirst();
+                    if (buffer != null) {
+                        retainedBytes -= buffer.length;
+                        hits++;
+                        return buffer;
+                    }
+                }
+            }
+
+            misses++;
+        }
+
+        // not rounded up to the class size, a power of two may waste almost half of a big buffer
+        return new byte[Math.max(minSize, 1 << MIN_CLASS_SHIFT)];
+    }
+
+    /**
+     * Give a leased buffer back. Buffers that do not fit into the budget are dropped.
+     */
+    public void release(final byte[] buffer) {
+        if (buffer == null || buffer.length < (1 << MIN_CLASS_SHIFT)) return;
+        if (buffer.length > (1 << MAX_CLASS_SHIFT) || buffer.length > byteBudget) return;
+
+        // buffers may have grown to any size, file them under the class they can fully serve
+        final int shift = floorLog2(buffer.length);
+
+        synchronized (this) {
+            // prefer dropping the biggest idle buffers, they are the least likely to be reused
+            for (int s = MAX_CLASS_SHIFT; s >= MIN_CLASS_SHIFT && retainedBytes + buffer.length > byteBudget; s--) {
+                final ArrayDeque<byte[]> deque = classes[s - MIN_CLASS_SHIFT];
+                while (!deque.isEmpty() && retainedBytes + buffer.length > byteBudget) {
+                    retainedBytes -= deque.pollLast().length;
+                }
+            }
+
+            classes[shift - MIN_CLASS_SHIFT].addFirst(buffer);
+            retainedBytes += buffer.length;
+        }
+    }
+
+    /**
+     * Predict the encoded size of an image based on previous captures of the same format.
+     *
+     * @param format   image format key
+     * @param pixels   amount of pixels of the image
+     * @param fallback bytes per pixel to use when nothing was learned yet for the format
+     */
+    public int predictSize(final int format, final long pixels, final double fallback) {
+        final Double learned;
+        synchronized (this) {
+            learned = bytesPerPixel.get(format);
+        }
+
+        final double ratio = learned != null ? learned * PREDICTION_HEADROOM : fallback;
+        return (int) Math.min(MAX_ARRAY_SIZE, Math.max(1, (long) Math.ceil(pixels * ratio)));
+    }
+
+    /**
+     * Learn the encoded size of a finished capture.
+     */
+    public void recordSize(final int format, final long pixels, final int encodedSize) {
+        if (pixels <= 0 || encodedSize <= 0) return;
+
+        final double sample = (double) encodedSize / pixels;
+        synchronized (this) {
+            final Double previous = bytesPerPixel.get(format);
+            bytesPerPixel.put(format, previous == null
+                    ? sample
+                    : previous + PREDICTION_WEIGHT * (sample - previous));
+        }
+    }
+
+    /**
+     * Drop all idle buffers.
+     */
+    public synchronized void trim() {
+        for (final ArrayDeque<byte[]> deque : classes) {
+            deque.clear();
+        }
+        retainedBytes = 0;
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    //endregion
+
+    //region Implementation
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<byte[]>[] newClasses(final int count) {
+        return (ArrayDeque<byte[]>[]) new ArrayDeque<?>[count];
+    }
+
+    /**
+     * Size class able to hold {@code size} bytes, may be above {@link #MAX_CLASS_SHIFT}.
+     */
+    private static int classShiftFor(final int size) {
+        if (size <= (1 << MIN_CLASS_SHIFT)) return MIN_CLASS_SHIFT;
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    private static int floorLog2(final int value) {
+        return 31 - Integer.numberOfLeadingZeros(value);
+    }
+    //endregion
+}
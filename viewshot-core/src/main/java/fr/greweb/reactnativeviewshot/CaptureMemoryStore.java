@@ -0,0 +1,173 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Encoded captures kept in memory to be displayed without touching the disk, evicted least
+ * recently used first above a byte budget. Captures are found by the key given when they are
+ * stored, until they are released or evicted.
+ */
+public class CaptureMemoryStore {
+    //region Constants
+    /**
+     * Default size of the captures retained.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+    //endregion
+
+    //region Class members
+    /**
+     * Captures by key, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong ids = new AtomicLong();
+    private final long maxBytes;
+
+    private long bytes;
+    private long evictions;
+    //endregion
+
+    //region Constructors
+    public CaptureMemoryStore() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes maximum size of the captures retained, the last stored capture is always
+     *                 kept
+     */
+    public CaptureMemoryStore(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Keep an encoded capture, the store takes ownership of the array.
+     *
+     * @param extension extension of the key, without the dot
+     * @param type      media type of the data
+     * @return key of the capture
+     */
+    @NonNull
+    public String put(@NonNull final byte[] data, @NonNull final String extension, @NonNull final String type) {
+        final String key = ids.incrementAndGet() + "." + extension;
+
+        synchronized (this) {
+            entries.put(key, new Entry(data, type));
+            bytes += data.length;
+
+            final Iterator<Entry> it = entries.values().iterator();
+            while (bytes > maxBytes && entries.size() > 1) {
+                final Entry eldest = it.next();
+                it.remove();
+                unref(eldest);
+                evictions++;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Give a retained capture a second key, released on its own. The data is shared and counted
+     * once.
+     *
+     * @return new key of the capture, null once released or evicted
+     */
+    @Nullable
+    public synchronized String alias(@NonNull final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) return null;
+
+        final int dot = key.lastIndexOf('.');
+        final String alias = ids.incrementAndGet() + (dot >= 0 ? key.substring(dot) : "");
+        entry.refs++;
+        entries.put(alias, entry);
+        return alias;
+    }
+
+    /**
+     * Capture of the key, null once released or evicted.
+     */
+    @Nullable
+    public synchronized Entry get(@NonNull final String key) {
+        return entries.get(key);
+    }
+
+    public synchronized boolean contains(@NonNull final String key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return whether the capture was still retained
+     */
+    public synchronized boolean release(@NonNull final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry == null) return false;
+
+        unref(entry);
+        return true;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * Keys retained, aliases included.
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Captures evicted to meet the budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Must be called while holding the store monitor.
+     */
+    private void unref(@NonNull final Entry entry) {
+        if (--entry.refs == 0) {
+            bytes -= entry.data.length;
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    public static final class Entry {
+        /**
+         * Encoded capture, must not be modified.
+         */
+        @NonNull
+        public final byte[] data;
+        @NonNull
+        public final String type;
+        /**
+         * Keys of the capture.
+         */
+        private int refs = 1;
+
+        private Entry(@NonNull final byte[] data, @NonNull final String type) {
+            this.data = data;
+            this.type = type;
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,171 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timings and memory use of a single capture. Stages are timed with marks: each mark charges
+ * the time elapsed since the previous one to its stage, so the stage durations add up to the
+ * total duration of the capture. A capture moves between threads but only one of them updates
+ * the metrics at a time.
+ */
+public final class CaptureMetrics {
+    //region Constants
+    /**
+     * Capture stages, in the order they usually happen.
+     */
+    public @interface Stage {
+        /**
+         * From the bridge call to the UI block, or to the batch slot.
+         */
+        int UI_WAIT = 0;
+        /**
+         * Waiting for a free capture worker.
+         */
+        int QUEUE_WAIT = 1;
+        /**
+         * Resolving the view of the tag.
+         */
+        int RESOLVE = 2;
+        /**
+         * Measuring content containers and tall view groups.
+         */
+        int MEASURE = 3;
+        /**
+         * Drawing the view, its special children and scaling the bitmap.
+         */
+        int DRAW = 4;
+        /**
+         * Waiting for asynchronous PixelCopy requests.
+         */
+        int PIXEL_COPY = 5;
+        /**
+         * Computing requested content and perceptual hashes.
+         */
+        int HASH = 6;
+        /**
+         * Compressing or copying the pixels, streamed results are Base64 encoded meanwhile.
+         */
+        int ENCODE = 7;
+        /**
+         * Flushing and closing the output.
+         */
+        int WRITE = 8;
+        /**
+         * Building the result string of buffered outputs, including zip compression.
+         */
+        int BASE64 = 9;
+    }
+
+    static final int STAGE_COUNT = 10;
+
+    /**
+     * Names of the stages in reports, by stage.
+     */
+    public static final String[] STAGE_NAMES = {
+            "uiWait", "queueWait", "resolve", "measure", "draw", "pixelCopy", "hash", "encode", "write", "base64"
+    };
+    //endregion
+
+    //region Class members
+    private final long startNanos;
+    private final long[] stageNanos = new long[STAGE_COUNT];
+
+    private long lastNanos;
+    private long totalNanos;
+    private int bitmapCount;
+    private int bitmapReuseCount;
+    private long bitmapBytes;
+    private long encodedBytes;
+    //endregion
+
+    //region Constructors
+    /**
+     * Start timing now, at the {@link Stage#UI_WAIT} stage.
+     */
+    public CaptureMetrics() {
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Charge the time elapsed since the previous mark to the stage.
+     */
+    public synchronized void mark(@Stage final int stage) {
+        final long now = System.nanoTime();
+        stageNanos[stage] += now - lastNanos;
+        lastNanos = now;
+    }
+
+    /**
+     * Account for a bitmap taken for the capture.
+     *
+     * @param reused whether an idle pooled bitmap was reused
+     */
+    public synchronized void recordBitmap(final long bytes, final boolean reused) {
+        bitmapCount++;
+        bitmapBytes += bytes;
+        if (reused) {
+            bitmapReuseCount++;
+        }
+    }
+
+    /**
+     * Stop timing.
+     *
+     * @param encodedBytes size of the result, chars for strings
+     */
+    public synchronized void finish(final long encodedBytes) {
+        this.encodedBytes = encodedBytes;
+        totalNanos = System.nanoTime() - startNanos;
+    }
+
+    public synchronized long getStageNanos(@Stage final int stage) {
+        return stageNanos[stage];
+    }
+
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public synchronized int getBitmapCount() {
+        return bitmapCount;
+    }
+
+    public synchronized int getBitmapReuseCount() {
+        return bitmapReuseCount;
+    }
+
+    public synchronized long getBitmapBytes() {
+        return bitmapBytes;
+    }
+
+    public synchronized long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * Report of the capture, durations in milliseconds.
+     */
+    @NonNull
+    public synchronized Map<String, Object> toMap() {
+        final Map<String, Object> stages = new LinkedHashMap<>();
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            stages.put(STAGE_NAMES[stage], stageNanos[stage] / 1e6);
+        }
+
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("total", totalNanos / 1e6);
+        map.put("stages", stages);
+        map.put("bitmaps", (double) bitmapCount);
+        map.put("bitmapsReused", (double) bitmapReuseCount);
+        map.put("bitmapBytes", (double) bitmapBytes);
+        map.put("encodedBytes", (double) encodedBytes);
+        return map;
+    }
+    //endregion
+}
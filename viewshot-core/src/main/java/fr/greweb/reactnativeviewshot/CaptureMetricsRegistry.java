@@ -0,0 +1,178 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated metrics of all captures, for service level monitoring. Durations and sizes go into
+ * histograms with power of two buckets, so memory stays constant and percentiles are accurate to
+ * a factor of two.
+ */
+public class CaptureMetricsRegistry {
+    //region Class members
+    private final Histogram[] stages = new Histogram[CaptureMetrics.STAGE_COUNT];
+    private final Histogram total = new Histogram();
+    private final Histogram bitmapBytes = new Histogram();
+    private final Histogram encodedBytes = new Histogram();
+    private final Map<String, Long> failures = new TreeMap<>();
+
+    private long captures;
+    private long bitmaps;
+    private long bitmapsReused;
+    //endregion
+
+    //region Constructors
+    public CaptureMetricsRegistry() {
+        for (int stage = 0; stage < stages.length; stage++) {
+            stages[stage] = new Histogram();
+        }
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Add a successful capture.
+     */
+    public synchronized void record(@NonNull final CaptureMetrics metrics) {
+        captures++;
+        for (int stage = 0; stage < stages.length; stage++) {
+            stages[stage].record(metrics.getStageNanos(stage) / 1000);
+        }
+        total.record(metrics.getTotalNanos() / 1000);
+        bitmapBytes.record(metrics.getBitmapBytes());
+        encodedBytes.record(metrics.getEncodedBytes());
+        bitmaps += metrics.getBitmapCount();
+        bitmapsReused += metrics.getBitmapReuseCount();
+    }
+
+    /**
+     * Add a failed capture.
+     *
+     * @param code error code the capture was rejected with
+     */
+    public synchronized void recordFailure(@NonNull final String code) {
+        final Long count = failures.get(code);
+        failures.put(code, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void reset() {
+        for (final Histogram histogram : stages) {
+            histogram.reset();
+        }
+        total.reset();
+        bitmapBytes.reset();
+        encodedBytes.reset();
+        failures.clear();
+        captures = 0;
+        bitmaps = 0;
+        bitmapsReused = 0;
+    }
+
+    /**
+     * Report of all captures since the last reset, durations in milliseconds.
+     */
+    @NonNull
+    public synchronized Map<String, Object> snapshot() {
+        final Map<String, Object> stageReports = new LinkedHashMap<>();
+        for (int stage = 0; stage < stages.length; stage++) {
+            stageReports.put(CaptureMetrics.STAGE_NAMES[stage], stages[stage].toMap(1000.0));
+        }
+
+        final Map<String, Object> failureReports = new LinkedHashMap<>();
+        long failed = 0;
+        for (final Map.Entry<String, Long> entry : failures.entrySet()) {
+            failureReports.put(entry.getKey(), (double) entry.getValue());
+            failed += entry.getValue();
+        }
+
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("captures", (double) captures);
+        map.put("failures", (double) failed);
+        map.put("failuresByCode", failureReports);
+        map.put("total", total.toMap(1000.0));
+        map.put("stages", stageReports);
+        map.put("bitmapBytes", bitmapBytes.toMap(1.0));
+        map.put("encodedBytes", encodedBytes.toMap(1.0));
+        map.put("bitmapReuseRate", bitmaps == 0 ? 0.0 : bitmapsReused / (double) bitmaps);
+        return map;
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Histogram of non negative values, bucket {@code i} holds values below {@code 2^i}.
+     */
+    public static final class Histogram {
+        private final long[] buckets = new long[64];
+        private long count;
+        private long sum;
+        private long max;
+
+        public void record(final long value) {
+            final long v = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(v)]++;
+            count++;
+            sum += v;
+            max = Math.max(max, v);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : sum / (double) count;
+        }
+
+        /**
+         * Upper bound of the bucket holding the percentile, capped to the maximum value.
+         *
+         * @param percentile between 0 and 100
+         */
+        public long getPercentile(final double percentile) {
+            if (count == 0) return 0;
+
+            final long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    final long upper = i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                    return Math.min(upper, max);
+                }
+            }
+            return max;
+        }
+
+        void reset() {
+            Arrays.fill(buckets, 0);
+            count = 0;
+            sum = 0;
+            max = 0;
+        }
+
+        /**
+         * @param unit amount of recorded units per reported unit
+         */
+        @NonNull
+        Map<String, Object> toMap(final double unit) {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", (double) count);
+            map.put("mean", getMean() / unit);
+            map.put("p50", getPercentile(50) / unit);
+            map.put("p90", getPercentile(90) / unit);
+            map.put("p99", getPercentile(99) / unit);
+            map.put("max", max / unit);
+            return map;
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,385 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor for capture work. Runs at most {@code parallelism} captures at the same
+ * time (each one holds a full size bitmap), keeps a bounded backlog and always drains the
+ * user-initiated lane before the background one.
+ * <p>
+ * A capture waiting on an asynchronous operation (e.g. PixelCopy) can {@link #detach()} from its
+ * worker thread: the thread is freed but the capture keeps its slot until it is resumed and
+ * finished.
+ */
+public class CaptureScheduler {
+    //region Constants
+    /**
+     * Idle worker threads are stopped after this delay.
+     */
+    private static final long KEEP_ALIVE_MS = 30_000L;
+    /**
+     * Default amount of captures running at the same time.
+     */
+    public static final int DEFAULT_PARALLELISM =
+            Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    /**
+     * Default amount of captures waiting for a free worker.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    /**
+     * Priority lanes.
+     */
+    @IntDef({Priority.USER_INITIATED, Priority.BACKGROUND})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+        /**
+         * Capture explicitly requested by the user, e.g. a share button.
+         */
+        int USER_INITIATED = 0;
+        /**
+         * Capture driven by the app itself, e.g. continuous or update capture modes.
+         */
+        int BACKGROUND = 1;
+    }
+    //endregion
+
+    //region Class members
+    private final Object lock = new Object();
+    private final int parallelism;
+    private final int queueCapacity;
+    private final int backgroundCapacity;
+    private final ArrayDeque<Runnable> userInitiated = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> background = new ArrayDeque<>();
+    private final ArrayDeque<Slot> resumed = new ArrayDeque<>();
+    private final ThreadLocal<Run> current = new ThreadLocal<>();
+    private final AtomicInteger threadIds = new AtomicInteger();
+    private final Executor userInitiatedExecutor = new LaneExecutor(Priority.USER_INITIATED);
+    private final Executor backgroundExecutor = new LaneExecutor(Priority.BACKGROUND);
+
+    private int workers;
+    private int idleWorkers;
+    private int active;
+    private long rejected;
+    private boolean shutdown;
+    //endregion
+
+    //region Constructors
+    public CaptureScheduler() {
+        this(DEFAULT_PARALLELISM, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param parallelism   maximum amount of captures running at the same time
+     * @param queueCapacity maximum amount of queued captures, the background lane may use at
+     *                      most half of it so it never starves user initiated captures
+     */
+    public CaptureScheduler(final int parallelism, final int queueCapacity) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+        this.backgroundCapacity = Math.max(1, queueCapacity / 2);
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Queue capture work in the given lane.
+     *
+     * @throws RejectedExecutionException when the lane is full or the scheduler is shut down
+     */
+    public void execute(@Priority final int priority, final Runnable task) {
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Capture scheduler is shut down");
+            }
+
+            final int queued = userInitiated.size() + background.size();
+            final boolean isBackground = Priority.BACKGROUND == priority;
+            if (queued >= queueCapacity || (isBackground && background.size() >= backgroundCapacity)) {
+                rejected++;
+                throw new RejectedExecutionException("Capture queue is full: " + queued + " pending");
+            }
+
+            (isBackground ? background : userInitiated).addLast(task);
+
+            if (active < parallelism) {
+                wakeWorker();
+            }
+        }
+    }
+
+    /**
+     * Keep the slot of the capture running on the current thread once its task returns. The
+     * capture must later call {@link Slot#resume(Runnable)} or {@link Slot#release()}.
+     *
+     * @throws IllegalStateException when not called from a task run by this scheduler
+     */
+    public Slot detach() {
+        final Run run = current.get();
+        if (run == null) {
+            throw new IllegalStateException("detach() called outside of a capture task");
+        }
+
+        synchronized (lock) {
+            run.detached = true;
+            run.slot.detached = true;
+        }
+
+        return run.slot;
+    }
+
+    /**
+     * Executor view of a single lane.
+     */
+    public Executor executor(@Priority final int priority) {
+        return Priority.BACKGROUND == priority ? backgroundExecutor : userInitiatedExecutor;
+    }
+
+    /**
+     * Amount of captures waiting for a worker in all lanes.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return userInitiated.size() + background.size();
+        }
+    }
+
+    /**
+     * Amount of captures waiting for a worker in the given lane.
+     */
+    public int getQueueDepth(@Priority final int priority) {
+        synchronized (lock) {
+            return Priority.BACKGROUND == priority ? background.size() : userInitiated.size();
+        }
+    }
+
+    /**
+     * Amount of captures currently running, including detached ones.
+     */
+    public int getActiveCount() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    /**
+     * Amount of captures rejected because of a full queue since creation.
+     */
+    public long getRejectedCount() {
+        synchronized (lock) {
+            return rejected;
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Drop all pending work and stop workers once they finish running captures.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            userInitiated.clear();
+            background.clear();
+            lock.notifyAll();
+        }
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Next task to run, user initiated lane first. Must be called while holding the lock.
+     */
+    private Runnable poll() {
+        final Runnable task = userInitiated.pollFirst();
+
+        return task != null ? task : background.pollFirst();
+    }
+
+    /**
+     * Make sure a worker picks up new work. Must be called while holding the lock.
+     */
+    private void wakeWorker() {
+        if (idleWorkers > 0) {
+            lock.notifyAll();
+        } else if (workers < parallelism) {
+            startWorker();
+        }
+    }
+
+    /**
+     * Free the slot of a finished capture. Must be called while holding the lock.
+     */
+    private void releaseSlot() {
+        active--;
+
+        if (!userInitiated.isEmpty() || !background.isEmpty()) {
+            wakeWorker();
+        }
+    }
+
+    private void startWorker() {
+        workers++;
+
+        final Thread thread = new Thread(new Worker(), "RNViewShot-capture-" + threadIds.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (true) {
+                Slot slot;
+                Runnable task;
+
+                synchronized (lock) {
+                    long idleSince = System.currentTimeMillis();
+
+                    while (true) {
+                        // resumed captures already own a slot, always run them first
+                        slot = resumed.pollFirst();
+                        if (slot != null) {
+                            task = slot.continuation;
+                            slot.continuation = null;
+                            break;
+                        }
+
+                        task = active < parallelism ? poll() : null;
+                        if (task != null) {
+                            slot = new Slot();
+                            active++;
+                            break;
+                        }
+
+                        final long waitMs = KEEP_ALIVE_MS - (System.currentTimeMillis() - idleSince);
+                        if ((shutdown && resumed.isEmpty()) || waitMs <= 0) {
+                            workers--;
+                            return;
+                        }
+
+                        idleWorkers++;
+                        try {
+                            lock.wait(waitMs);
+                        } catch (InterruptedException ignored) {
+                            idleSince = 0; // exit on next check
+                        } finally {
+                            idleWorkers--;
+                        }
+                    }
+                }
+
+                final Run run = new Run(slot);
+                current.set(run);
+                try {
+                    task.run();
+                } catch (Throwable ignored) {
+                    // tasks are responsible of their own error reporting, keep the worker alive
+                } finally {
+                    current.remove();
+
+                    synchronized (lock) {
+                        // once detached, resume() or release() frees the slot, even when called
+                        // before the task returned
+                        if (!run.detached) {
+                            releaseSlot();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A task running in a slot, the slot of a resumed capture may run again before the previous
+     * task returned.
+     */
+    private static final class Run {
+        final Slot slot;
+        /**
+         * Whether the task detached, guarded by the scheduler lock.
+         */
+        boolean detached;
+
+        Run(final Slot slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final class LaneExecutor implements Executor {
+        @Priority
+        private final int priority;
+
+        private LaneExecutor(@Priority final int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            CaptureScheduler.this.execute(priority, command);
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Execution slot of a detached capture.
+     */
+    public final class Slot {
+        private boolean detached;
+        private Runnable continuation;
+
+        private Slot() {
+        }
+
+        /**
+         * Continue the capture on a worker thread. Resumed captures skip the queue and are never
+         * rejected as they already own a slot.
+         */
+        public void resume(final Runnable continuation) {
+            synchronized (lock) {
+                if (!detached) {
+                    throw new IllegalStateException("Capture slot is not detached");
+                }
+
+                detached = false;
+                this.continuation = continuation;
+                resumed.addLast(this);
+                wakeWorker();
+            }
+        }
+
+        /**
+         * Give the slot back without resuming, e.g. when the capture finished from a callback.
+         */
+        public void release() {
+            synchronized (lock) {
+                if (detached) {
+                    detached = false;
+                    releaseSlot();
+                }
+            }
+        }
+    }
+    //endregion
+}
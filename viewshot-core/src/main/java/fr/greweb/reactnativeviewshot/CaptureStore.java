@@ -0,0 +1,581 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Bounded directory of capture files, named by the hash of their content so identical captures
+ * share a single file.
+ * <p>
+ * Captures are written to a pending file, then {@link #commit(File, String) committed} under
+ * their content name. Committed files are listed in an append-only journal, so the store picks
+ * its files back up after a restart and deletes the ones it does not know (pending files of a
+ * crashed process). Least recently used files are evicted above a size or an age, on a
+ * background thread which also deletes the released files and writes the journal in batches.
+ * <p>
+ * Files stay valid until released, evicted or deleted by the system; eviction does not wait for
+ * files to be released, which keeps the store bounded when callers never release.
+ */
+public class CaptureStore {
+    //region Constants
+    /**
+     * Default size of the stored files.
+     */
+    public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+    /**
+     * Default time after which an unused file is evicted.
+     */
+    public static final long DEFAULT_MAX_AGE_MS = TimeUnit.DAYS.toMillis(1);
+
+    static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String PENDING_PREFIX = ".pending-";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final long KEEP_ALIVE_MS = 30_000L;
+    /**
+     * Journal is rewritten once it holds this many redundant lines.
+     */
+    private static final int COMPACT_THRESHOLD = 256;
+    private static final int HASH_CHUNK = 64 * 1024;
+    //endregion
+
+    //region Class members
+    private final List<File> directories;
+    private final long maxBytes;
+    private final long maxAgeMs;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Committed files by name, least recently used first.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Pending files being written, kept out of the orphan sweep.
+     */
+    private final Set<String> pending = new HashSet<>();
+    private final ArrayList<String> releases = new ArrayList<>();
+    private final StringBuilder journalAppend = new StringBuilder();
+
+    @Nullable
+    private File directory;
+    private boolean loaded;
+    private boolean maintenanceScheduled;
+    private long bytes;
+    private int journalLines;
+    private long deduplicated;
+    private long evicted;
+    //endregion
+
+    //region Constructors
+    /**
+     * @param directories candidate directories, e.g. on internal and external storage
+     */
+    public CaptureStore(@NonNull final List<File> directories) {
+        this(directories, DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * @param directories candidate directories, the one already holding a journal is used,
+     *                    otherwise the one with the most free space
+     * @param maxBytes    maximum size of the stored files
+     * @param maxAgeMs    time after which an unused file is evicted
+     */
+    public CaptureStore(@NonNull final List<File> directories, final long maxBytes, final long maxAgeMs) {
+        this.directories = new ArrayList<>(directories);
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+        this.executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                final Thread thread = new Thread(r, "RNViewShot-store");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Create a pending file to write a capture into. The journal is loaded in the background on
+     * first use.
+     *
+     * @param extension extension of the file, without the dot
+     */
+    @NonNull
+    public File newFile(@NonNull final String extension) throws IOException {
+        final File dir = obtainDirectory();
+        // created and registered at once, the orphan sweep lists the directory under the monitor
+        synchronized (this) {
+            File file;
+            try {
+                file = File.createTempFile(PENDING_PREFIX, "." + extension, dir);
+            } catch (final IOException ex) {
+                // cache directories may be cleared by the system at any time
+                if (!dir.mkdirs()) throw ex;
+                file = File.createTempFile(PENDING_PREFIX, "." + extension, dir);
+            }
+            pending.add(file.getName());
+            return file;
+        }
+    }
+
+    /**
+     * Move a written pending file to its content name. When a file with the same content is
+     * stored already, the pending file is deleted and the stored one is given back.
+     *
+     * @param prefix start of the file name, the hash and the extension of the pending file follow
+     * @return the stored file
+     */
+    @NonNull
+    public File commit(@NonNull final File file, @NonNull final String prefix) throws IOException {
+        return commit(file, prefix, hashOf(file));
+    }
+
+    /**
+     * Commit a pending file whose content hash was computed while writing it, see
+     * {@link HashingOutputStream}.
+     *
+     * @param hash XXH64 of the file content
+     */
+    @NonNull
+    public File commit(@NonNull final File file, @NonNull final String prefix, final long hash) throws IOException {
+        final String name = prefix + hex(hash) + extensionOf(file.getName());
+        final File target = new File(file.getParentFile(), name);
+        final long length = file.length();
+        final long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            pending.remove(file.getName());
+
+            final Entry entry = entries.get(name);
+            if (entry != null && entry.bytes != length) {
+                throw new IOException("Hash collision with " + target);
+            }
+            if (entry != null && target.exists()) {
+                // same content, the pending copy is not needed
+                entry.refs++;
+                entry.accessed = now;
+                deduplicated++;
+                journal(entry);
+                scheduleMaintenance();
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return target;
+            }
+
+            if (!file.renameTo(target)) {
+                throw new IOException("Failed to move capture to " + target);
+            }
+
+            if (entry != null) {
+                // deleted behind our back
+                bytes -= entry.bytes;
+            }
+            final Entry added = new Entry(name, length, now);
+            entries.put(name, added);
+            bytes += length;
+            journal(added);
+            scheduleMaintenance();
+            return target;
+        }
+    }
+
+    /**
+     * Delete a pending file which will not be committed.
+     */
+    public void discard(@NonNull final File file) {
+        synchronized (this) {
+            pending.remove(file.getName());
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Share a stored file with one more capture, which releases it on its own.
+     *
+     * @return whether the file is still stored
+     */
+    public synchronized boolean retain(@NonNull final File file) {
+        if (directory == null || !directory.equals(file.getParentFile())) return false;
+
+        final Entry entry = entries.get(file.getName());
+        if (entry == null) return false;
+
+        entry.refs++;
+        return true;
+    }
+
+    /**
+     * Release a stored file, it is deleted in the background once every capture sharing it was
+     * released. Files outside of the store are ignored.
+     *
+     * @return whether the file belongs to the store
+     */
+    public boolean release(@NonNull final File file) {
+        synchronized (this) {
+            if (directory == null || !directory.equals(file.getParentFile())) return false;
+
+            releases.add(file.getName());
+            scheduleMaintenance();
+            return true;
+        }
+    }
+
+    /**
+     * Whether the file was not released nor evicted yet.
+     */
+    public synchronized boolean contains(@NonNull final File file) {
+        return directory != null && directory.equals(file.getParentFile()) && entries.containsKey(file.getName());
+    }
+
+    @Nullable
+    public synchronized File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Commits which reused a file of the same content.
+     */
+    public synchronized long getDeduplicatedCount() {
+        return deduplicated;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evicted;
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Directory of the store, chosen once: free space is only looked up when no candidate holds
+     * a journal yet.
+     */
+    @NonNull
+    private File obtainDirectory() throws IOException {
+        synchronized (this) {
+            if (directory != null) return directory;
+        }
+
+        File chosen = null;
+        for (final File candidate : directories) {
+            if (candidate != null && new File(candidate, JOURNAL).isFile()) {
+                chosen = candidate;
+                break;
+            }
+        }
+        if (chosen == null) {
+            long free = -1;
+            for (final File candidate : directories) {
+                if (candidate == null) continue;
+
+                final File volume = candidate.getParentFile() != null ? candidate.getParentFile() : candidate;
+                final long space = volume.getFreeSpace();
+                if (space > free) {
+                    free = space;
+                    chosen = candidate;
+                }
+            }
+        }
+        if (chosen == null || !(chosen.isDirectory() || chosen.mkdirs())) {
+            throw new IOException("No capture directory available");
+        }
+
+        synchronized (this) {
+            if (directory == null) {
+                directory = chosen;
+                scheduleMaintenance();
+            }
+            return directory;
+        }
+    }
+
+    private void scheduleMaintenance() {
+        if (maintenanceScheduled) return;
+
+        maintenanceScheduled = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        });
+    }
+
+    /**
+     * Load the journal once, then delete released and evicted files and append the journal.
+     */
+    private void maintain() {
+        final File dir;
+        final boolean load;
+        synchronized (this) {
+            maintenanceScheduled = false;
+            dir = directory;
+            load = !loaded;
+            loaded = true;
+        }
+        if (dir == null) return;
+
+        if (load) {
+            load(dir);
+        }
+
+        final List<File> deletions = new ArrayList<>();
+        final String lines;
+        final boolean compact;
+        synchronized (this) {
+            for (final String name : releases) {
+                final Entry entry = entries.get(name);
+                if (entry != null && --entry.refs <= 0) {
+                    remove(entry);
+                    deletions.add(new File(dir, name));
+                } else if (entry == null && name.startsWith(PENDING_PREFIX) && !pending.contains(name)) {
+                    // given out uncommitted
+                    deletions.add(new File(dir, name));
+                }
+            }
+            releases.clear();
+
+            final long oldest = System.currentTimeMillis() - maxAgeMs;
+            final Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext() && entries.size() > 1) {
+                final Entry entry = it.next();
+                if (bytes <= maxBytes && entry.accessed >= oldest) break;
+
+                it.remove();
+                bytes -= entry.bytes;
+                evicted++;
+                journalAppend.append("D ").append(entry.name).append('\n');
+                journalLines++;
+                deletions.add(new File(dir, entry.name));
+            }
+
+            lines = journalAppend.toString();
+            journalAppend.setLength(0);
+            compact = journalLines > entries.size() + COMPACT_THRESHOLD;
+        }
+
+        for (final File file : deletions) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+
+        // a lost journal only makes the next start forget the files
+        try {
+            if (compact) {
+                rewriteJournal(dir);
+            } else if (!lines.isEmpty()) {
+                final Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dir, JOURNAL), true), ASCII);
+                try {
+                    writer.write(lines);
+                } finally {
+                    writer.close();
+                }
+            }
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Replay the journal and delete the files it does not list. Files committed meanwhile are
+     * kept as they are.
+     */
+    private void load(@NonNull final File dir) {
+        final Map<String, Entry> journaled = new HashMap<>();
+        int lineCount = 0;
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(dir, JOURNAL)), ASCII));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineCount++;
+                    // "P <bytes> <accessed> <name>" or "D <name>", a torn last line is skipped
+                    final String[] parts = line.split(" ", 4);
+                    try {
+                        if ("P".equals(parts[0]) && parts.length == 4) {
+                            journaled.remove(parts[3]);
+                            journaled.put(parts[3], new Entry(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                        } else if ("D".equals(parts[0]) && parts.length == 2) {
+                            journaled.remove(parts[1]);
+                        }
+                    } catch (final NumberFormatException ignored) {
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException ignored) {
+            // no journal yet
+        }
+
+        // replayed entries are ordered by access time, not by file position
+        final List<Entry> ordered = new ArrayList<>(journaled.values());
+        Collections.sort(ordered, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry a, final Entry b) {
+                return a.accessed < b.accessed ? -1 : a.accessed > b.accessed ? 1 : 0;
+            }
+        });
+
+        final List<File> orphans = new ArrayList<>();
+        synchronized (this) {
+            final LinkedHashMap<String, Entry> current = new LinkedHashMap<>(entries);
+            entries.clear();
+            bytes = 0;
+            for (final Entry entry : ordered) {
+                if (!current.containsKey(entry.name) && new File(dir, entry.name).isFile()) {
+                    entry.refs = 0;
+                    entries.put(entry.name, entry);
+                    bytes += entry.bytes;
+                }
+            }
+            for (final Entry entry : current.values()) {
+                entries.put(entry.name, entry);
+                bytes += entry.bytes;
+            }
+            journalLines += lineCount;
+
+            final String[] names = dir.list();
+            if (names != null) {
+                for (final String name : names) {
+                    if (!entries.containsKey(name) && !pending.contains(name) && !JOURNAL.equals(name)) {
+                        orphans.add(new File(dir, name));
+                    }
+                }
+            }
+        }
+
+        for (final File orphan : orphans) {
+            //noinspection ResultOfMethodCallIgnored
+            orphan.delete();
+        }
+    }
+
+    /**
+     * Write the live entries to a new journal, then swap it in.
+     */
+    private void rewriteJournal(@NonNull final File dir) throws IOException {
+        final StringBuilder lines = new StringBuilder();
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                append(lines, entry);
+            }
+            journalLines = entries.size();
+        }
+
+        final File tmp = new File(dir, JOURNAL_TMP);
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), ASCII);
+        try {
+            writer.write(lines.toString());
+        } finally {
+            writer.close();
+        }
+        if (!tmp.renameTo(new File(dir, JOURNAL))) {
+            throw new IOException("Failed to replace the journal");
+        }
+    }
+
+    private void remove(@NonNull final Entry entry) {
+        entries.remove(entry.name);
+        bytes -= entry.bytes;
+        journalAppend.append("D ").append(entry.name).append('\n');
+        journalLines++;
+    }
+
+    private void journal(@NonNull final Entry entry) {
+        append(journalAppend, entry);
+        journalLines++;
+    }
+
+    private static void append(@NonNull final StringBuilder lines, @NonNull final Entry entry) {
+        lines.append("P ").append(entry.bytes).append(' ').append(entry.accessed).append(' ').append(entry.name).append('\n');
+    }
+
+    /**
+     * 64 bits hash of the file content, read back from disk.
+     */
+    private static long hashOf(@NonNull final File file) throws IOException {
+        final XXHash64 hash = new XXHash64();
+        final byte[] chunk = new byte[HASH_CHUNK];
+        final InputStream in = new FileInputStream(file);
+        try {
+            int count;
+            while ((count = in.read(chunk)) > 0) {
+                hash.update(chunk, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        return hash.digest();
+    }
+
+    @NonNull
+    private static String hex(final long hash) {
+        final String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    @NonNull
+    private static String extensionOf(@NonNull final String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot) : "";
+    }
+    //endregion
+
+    //region Nested declarations
+    private static final class Entry {
+        private final String name;
+        private final long bytes;
+        private long accessed;
+        /**
+         * Captures given the file and not released yet, since the store was loaded.
+         */
+        private int refs = 1;
+
+        private Entry(final String name, final long bytes, final long accessed) {
+            this.name = name;
+            this.bytes = bytes;
+            this.accessed = accessed;
+        }
+    }
+    //endregion
+}
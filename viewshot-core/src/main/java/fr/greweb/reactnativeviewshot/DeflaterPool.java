@@ -0,0 +1,173 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Thread-safe pool of {@link Deflater}s. Each deflater holds a few hundred Kb of native zlib
+ * memory that is only freed by {@link Deflater#end()}, so instances are reused across captures
+ * and the ones that do not fit in the pool are ended right away instead of waiting for
+ * finalization.
+ * <p>
+ * Deflaters are grouped by level, strategy and wrapping, which are set once at creation.
+ */
+public class DeflaterPool {
+    //region Constants
+    /**
+     * Default amount of idle deflaters retained.
+     */
+    public static final int DEFAULT_CAPACITY = 2 * Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final byte[] EMPTY = new byte[0];
+    //endregion
+
+    //region Class members
+    private final Map<Integer, ArrayDeque<Deflater>> idle = new HashMap<>();
+    /**
+     * Key of the leased deflaters.
+     */
+    private final Map<Deflater, Integer> leased = new IdentityHashMap<>();
+    private final int capacity;
+
+    private int idleCount;
+    private long hits;
+    private long misses;
+    //endregion
+
+    //region Constructors
+    public DeflaterPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum amount of idle deflaters retained
+     */
+    public DeflaterPool(final int capacity) {
+        this.capacity = capacity;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Take a reset deflater, must be given back with {@link #release(Deflater)}.
+     *
+     * @param level    zlib compression level
+     * @param strategy one of the {@link Deflater} strategies
+     * @param nowrap   raw deflate without zlib header and checksum
+     */
+    public Deflater obtain(final int level, final int strategy, final boolean nowrap) {
+        final int key = key(level, strategy, nowrap);
+
+        synchronized (this) {
+            final ArrayDeque<Deflater> deflaters = idle.get(key);
+            final Deflater deflater = deflaters != null ? deflaters.poll() : null;
+            if (deflater != null) {
+                idleCount--;
+                hits++;
+                leased.put(deflater, key);
+                return deflater;
+            }
+            misses++;
+        }
+
+        final Deflater deflater = new Deflater(level, nowrap);
+        deflater.setStrategy(strategy);
+        // the strategy is only applied by the next deflate call, which would be too late once a
+        // dictionary is set
+        deflater.deflate(EMPTY);
+
+        synchronized (this) {
+            leased.put(deflater, key);
+        }
+        return deflater;
+    }
+
+    /**
+     * Give a deflater back, it is reset for the next user or ended when the pool is full.
+     */
+    public void release(final Deflater deflater) {
+        if (deflater == null) return;
+
+        final Integer key;
+        synchronized (this) {
+            key = leased.remove(deflater);
+            if (key != null && idleCount < capacity) {
+                deflater.reset();
+
+                ArrayDeque<Deflater> deflaters = idle.get(key);
+                if (deflaters == null) {
+                    deflaters = new ArrayDeque<>();
+                    idle.put(key, deflaters);
+                }
+                deflaters.push(deflater);
+                idleCount++;
+                return;
+            }
+        }
+
+        deflater.end();
+    }
+
+    /**
+     * Write the zlib stream of {@code length} bytes of {@code input} on the calling thread, with a
+     * pooled deflater. The output stream is not closed.
+     *
+     * @see ParallelDeflater#deflate(byte[], int, int, OutputStream)
+     */
+    public void deflate(final byte[] input, final int offset, final int length, final int level, final int strategy, final OutputStream out) throws IOException {
+        final Deflater deflater = obtain(level, strategy, false);
+        try {
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+
+            final byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * End all idle deflaters.
+     */
+    public void clear() {
+        final ArrayDeque<Deflater> ended = new ArrayDeque<>();
+        synchronized (this) {
+            for (final ArrayDeque<Deflater> deflaters : idle.values()) {
+                ended.addAll(deflaters);
+            }
+            idle.clear();
+            idleCount = 0;
+        }
+
+        for (final Deflater deflater : ended) {
+            deflater.end();
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        return idleCount;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    //endregion
+
+    //region Implementation
+    private static int key(final int level, final int strategy, final boolean nowrap) {
+        // level is -1..9, strategy is 0..2
+        return ((level + 1) << 3) | (strategy << 1) | (nowrap ? 1 : 0);
+    }
+    //endregion
+}
@@ -0,0 +1,46 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream computing the XXH64 of the bytes written through it, so a file can be named by its
+ * content without reading it back.
+ */
+public class HashingOutputStream extends FilterOutputStream {
+    //region Class members
+    private final XXHash64 hash = new XXHash64();
+    private final byte[] single = new byte[1];
+    //endregion
+
+    //region Constructors
+    public HashingOutputStream(@NonNull final OutputStream out) {
+        super(out);
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Hash of the bytes written so far.
+     */
+    public long getHash() {
+        return hash.digest();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        single[0] = (byte) b;
+        hash.update(single, 0, 1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(@NonNull final byte[] b, final int off, final int len) throws IOException {
+        hash.update(b, off, len);
+        out.write(b, off, len);
+    }
+    //endregion
+}
@@ -0,0 +1,138 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Content and perceptual hashes of an image, fed with its rows from top to bottom.
+ * <p>
+ * The content hash is XXH64 over the ARGB pixels, seeded with the image size, so it only matches
+ * identical images. The perceptual hash is a 64 bit dHash: the luma is averaged over a 9x8 grid
+ * and each bit tells whether a cell is brighter than its right neighbour. Similar images have
+ * hashes a few bits apart, see {@link #distance(long, long)}.
+ */
+public final class ImageHasher {
+    //region Constants
+    private static final int GRID_COLUMNS = 9;
+    private static final int GRID_ROWS = 8;
+    //endregion
+
+    //region Class members
+    private final int width;
+    private final int height;
+    @Nullable
+    private final XXHash64 content;
+    /**
+     * Grid column of each image column, null when the perceptual hash is not computed.
+     */
+    @Nullable
+    private final int[] columns;
+    private final long[] sums = new long[GRID_COLUMNS * GRID_ROWS];
+    private final long[] counts = new long[GRID_COLUMNS * GRID_ROWS];
+
+    private int y;
+    //endregion
+
+    //region Constructors
+    /**
+     * @param content    compute the content hash
+     * @param perceptual compute the perceptual hash
+     */
+    public ImageHasher(final int width, final int height, final boolean content, final boolean perceptual) {
+        this.width = width;
+        this.height = height;
+        this.content = content ? new XXHash64(((long) width << 32) | height) : null;
+
+        if (perceptual) {
+            columns = new int[width];
+            for (int x = 0; x < width; x++) {
+                columns[x] = (int) ((long) x * GRID_COLUMNS / width);
+            }
+        } else {
+            columns = null;
+        }
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Hash the next {@code rows} rows, non premultiplied ARGB with a stride of the image width.
+     */
+    public void update(@NonNull final int[] argb, final int offset, final int rows) {
+        if (content != null) {
+            content.update(argb, offset, rows * width);
+        }
+
+        if (columns != null) {
+            for (int r = 0; r < rows; r++, y++) {
+                final int cellRow = (int) ((long) y * GRID_ROWS / height) * GRID_COLUMNS;
+                final int start = offset + r * width;
+                for (int x = 0; x < width; x++) {
+                    final int cell = cellRow + columns[x];
+                    sums[cell] += PngStreamWriter.luma(argb[start + x]);
+                    counts[cell]++;
+                }
+            }
+        } else {
+            y += rows;
+        }
+    }
+
+    public boolean hasContentHash() {
+        return content != null;
+    }
+
+    public boolean hasPerceptualHash() {
+        return columns != null;
+    }
+
+    /**
+     * XXH64 of the pixels, only valid once all rows were hashed.
+     */
+    public long getContentHash() {
+        if (content == null) {
+            throw new IllegalStateException("Content hash not computed");
+        }
+        return content.digest();
+    }
+
+    /**
+     * dHash of the image, only valid once all rows were hashed.
+     */
+    public long getPerceptualHash() {
+        if (columns == null) {
+            throw new IllegalStateException("Perceptual hash not computed");
+        }
+
+        long hash = 0;
+        for (int row = 0; row < GRID_ROWS; row++) {
+            for (int column = 0; column < GRID_COLUMNS - 1; column++) {
+                final int cell = row * GRID_COLUMNS + column;
+                // compare averages without dividing, a * cb > b * ca
+                final boolean brighter = sums[cell] * counts[cell + 1] > sums[cell + 1] * counts[cell];
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Amount of differing bits between two perceptual hashes, up to 10 usually means the same
+     * picture.
+     */
+    public static int distance(final long hash1, final long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    /**
+     * 16 hex digits, the format hashes are reported in.
+     */
+    @NonNull
+    public static String toHex(final long hash) {
+        return String.format(Locale.US, "%016x", hash);
+    }
+    //endregion
+}
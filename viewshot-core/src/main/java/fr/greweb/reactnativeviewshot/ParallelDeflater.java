@@ -0,0 +1,262 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * zlib compression of a buffer on all cores, in the style of pigz.
+ * <p>
+ * The input is split in chunks compressed in parallel as raw deflate streams, each one primed
+ * with the 32Kb of input preceding it so that matches reach across chunk boundaries. Chunks end
+ * on a byte aligned sync flush and are written in order, which makes a single zlib stream whose
+ * checksum is combined from the checksums of the chunks. Small inputs are compressed on the
+ * calling thread.
+ */
+public final class ParallelDeflater {
+    //region Constants
+    /**
+     * Deflate window, the dictionary of a chunk is the input preceding it.
+     */
+    static final int WINDOW_SIZE = 32 * 1024;
+    /**
+     * Input size of a chunk.
+     */
+    private static final int CHUNK_SIZE = 128 * 1024;
+    private static final int ADLER_BASE = 65521;
+
+    private static final Object poolLock = new Object();
+    private static ForkJoinPool sharedPool;
+    //endregion
+
+    //region Class members
+    private final ForkJoinPool pool;
+    private final DeflaterPool deflaters;
+    private final int level;
+    private final int strategy;
+    //endregion
+
+    //region Constructors
+    /**
+     * Compress on the shared fork-join pool.
+     */
+    public ParallelDeflater(final DeflaterPool deflaters, final int level, final int strategy) {
+        this(sharedPool(), deflaters, level, strategy);
+    }
+
+    /**
+     * @param pool      runs the chunk tasks
+     * @param deflaters source of the chunk deflaters
+     * @param level     zlib compression level
+     * @param strategy  one of the {@link Deflater} strategies
+     */
+    public ParallelDeflater(final ForkJoinPool pool, final DeflaterPool deflaters, final int level, final int strategy) {
+        this.pool = pool;
+        this.deflaters = deflaters;
+        this.level = level;
+        this.strategy = strategy;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Write the zlib stream of {@code length} bytes of {@code input}. The output stream is not
+     * closed.
+     */
+    public void deflate(final byte[] input, final int offset, final int length, final OutputStream out) throws IOException {
+        final int chunks = Math.max(1, (length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        final int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+
+        out.write(zlibHeader(level));
+
+        final ArrayDeque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        long adler = 1;
+        int next = 0;
+
+        try {
+            while (next < chunks || !inFlight.isEmpty()) {
+                while (next < chunks && inFlight.size() < maxInFlight) {
+                    final int start = offset + next * CHUNK_SIZE;
+                    final int end = Math.min(offset + length, start + CHUNK_SIZE);
+                    final ForkJoinTask<Chunk> task = ForkJoinTask.adapt(new ChunkTask(input, offset, start, end - start, next == chunks - 1));
+                    if (chunks == 1) {
+                        // a single chunk is not worth a thread hop
+                        task.quietlyInvoke();
+                    } else {
+                        pool.execute(task);
+                    }
+                    inFlight.add(task);
+                    next++;
+                }
+
+                final Chunk chunk = join(inFlight.poll());
+                adler = combineAdler32(adler, chunk.adler, chunk.length);
+                out.write(chunk.data.buffer(), 0, chunk.data.size());
+            }
+        } finally {
+            for (final ForkJoinTask<Chunk> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+
+        out.write(new byte[]{(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler});
+    }
+
+    /**
+     * Adler-32 of the concatenation of two byte sequences, the second one being {@code length2}
+     * bytes long. Same as zlib {@code adler32_combine}.
+     */
+    public static long combineAdler32(final long adler1, final long adler2, final long length2) {
+        final long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum1 >= ADLER_BASE) sum1 -= ADLER_BASE;
+        if (sum2 >= (ADLER_BASE << 1)) sum2 -= (ADLER_BASE << 1);
+        if (sum2 >= ADLER_BASE) sum2 -= ADLER_BASE;
+        return sum1 | (sum2 << 16);
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Fork-join pool shared by the parallel encoders, one thread per core.
+     */
+    static ForkJoinPool sharedPool() {
+        synchronized (poolLock) {
+            if (sharedPool == null) {
+                sharedPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+            }
+            return sharedPool;
+        }
+    }
+
+    /**
+     * zlib header of a stream with a 32Kb window, the level hint follows zlib.
+     */
+    static byte[] zlibHeader(final int level) {
+        final int levelFlags = level == Deflater.DEFAULT_COMPRESSION ? 2
+                : level < 2 ? 0
+                : level < 6 ? 1
+                : level == 6 ? 2
+                : 3;
+        final int header = (0x78 << 8) | (levelFlags << 6);
+        return new byte[]{0x78, (byte) (header + 31 - header % 31)};
+    }
+
+    /**
+     * Compress {@code length} bytes of {@code input} at {@code offset} as a raw deflate stream
+     * primed with the preceding input, ending with a sync flush unless it is the last one.
+     *
+     * @param start offset of the first byte that may be used as dictionary
+     */
+    static void deflateChunk(final Deflater deflater, final byte[] input, final int start, final int offset, final int length, final boolean last, final OutputStream out) throws IOException {
+        final int dictionaryLength = Math.min(WINDOW_SIZE, offset - start);
+        if (dictionaryLength > 0) {
+            deflater.setDictionary(input, offset - dictionaryLength, dictionaryLength);
+        }
+
+        final byte[] buffer = new byte[16 * 1024];
+        deflater.setInput(input, offset, length);
+
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } else {
+            // byte aligned and not final, the next chunk continues the same stream
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, count);
+            } while (count == buffer.length);
+        }
+    }
+
+    static <T> T join(final ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compression interrupted", ex);
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Compression failed", cause);
+        }
+    }
+
+    private final class ChunkTask implements Callable<Chunk> {
+        private final byte[] input;
+        private final int start;
+        private final int offset;
+        private final int length;
+        private final boolean last;
+
+        private ChunkTask(final byte[] input, final int start, final int offset, final int length, final boolean last) {
+            this.input = input;
+            this.start = start;
+            this.offset = offset;
+            this.length = length;
+            this.last = last;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            final Adler32 adler = new Adler32();
+            adler.update(input, offset, length);
+
+            // deflate never expands by more than a few bytes per 16Kb block
+            final ChunkOutputStream data = new ChunkOutputStream(length + (length >> 10) + 64);
+            final Deflater deflater = deflaters.obtain(level, strategy, true);
+            try {
+                deflateChunk(deflater, input, start, offset, length, last, data);
+            } finally {
+                deflaters.release(deflater);
+            }
+
+            return new Chunk(data, adler.getValue(), length);
+        }
+    }
+
+    /**
+     * Compressed chunk and the checksum of its uncompressed bytes.
+     */
+    static final class Chunk {
+        final ChunkOutputStream data;
+        final long adler;
+        final int length;
+
+        Chunk(final ChunkOutputStream data, final long adler, final int length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Gives access to the written bytes without a copy.
+     */
+    static final class ChunkOutputStream extends ByteArrayOutputStream {
+        ChunkOutputStream(final int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,181 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder filtering and compressing bands of rows in parallel on a fork-join pool.
+ * <p>
+ * Each band is an independent raw deflate stream primed with the last 32Kb of the previous band,
+ * so matches still reach across band boundaries. Bands end on a byte aligned sync flush, which
+ * makes their concatenation a single valid deflate stream. The zlib checksum of the whole image
+ * is combined from the checksums of the bands. Only a few bands are in flight at a time, memory
+ * stays bounded whatever the image size.
+ */
+public final class ParallelPngEncoder {
+    //region Constants
+    /**
+     * Minimum amount of filtered bytes per band, smaller bands compress worse.
+     */
+    private static final int MIN_BAND_BYTES = 256 * 1024;
+    //endregion
+
+    //region Class members
+    private final ForkJoinPool pool;
+    private final DeflaterPool deflaters;
+    private final int level;
+    //endregion
+
+    //region Constructors
+    /**
+     * Encode on the shared fork-join pool.
+     */
+    public ParallelPngEncoder(final DeflaterPool deflaters) {
+        this(ParallelDeflater.sharedPool(), deflaters, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param pool      runs the band tasks
+     * @param deflaters source of the band deflaters
+     * @param level     zlib compression level
+     */
+    public ParallelPngEncoder(final ForkJoinPool pool, final DeflaterPool deflaters, final int level) {
+        this.pool = pool;
+        this.deflaters = deflaters;
+        this.level = level;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Encode a {@code width} x {@code height} image, rows are read from the source concurrently.
+     * The output stream is not closed.
+     *
+     * @param grayscale write 8 bit luma instead of RGBA
+     */
+    public void encode(final RowSource source, final int width, final int height, final boolean grayscale, final OutputStream out) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+
+        final int rowLength = PngStreamWriter.rowLength(width, grayscale);
+        final int bandRows = Math.max(1, Math.min(height, MIN_BAND_BYTES / rowLength));
+        final int bands = (height + bandRows - 1) / bandRows;
+        final int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+
+        final CRC32 crc = new CRC32();
+        final byte[] zlibHeader = ParallelDeflater.zlibHeader(level);
+        PngStreamWriter.writeHeader(out, width, height, grayscale, crc);
+        PngStreamWriter.writeChunk(out, PngStreamWriter.IDAT, zlibHeader, 0, zlibHeader.length, crc);
+
+        final ArrayDeque<ForkJoinTask<ParallelDeflater.Chunk>> inFlight = new ArrayDeque<>();
+        long adler = 1;
+        int next = 0;
+
+        try {
+            while (next < bands || !inFlight.isEmpty()) {
+                while (next < bands && inFlight.size() < maxInFlight) {
+                    final int y = next * bandRows;
+                    final int rows = Math.min(bandRows, height - y);
+                    inFlight.add(pool.submit(new BandTask(source, width, y, rows, grayscale, next == bands - 1)));
+                    next++;
+                }
+
+                // bands are written in order, later ones keep compressing meanwhile
+                final ParallelDeflater.Chunk band = ParallelDeflater.join(inFlight.poll());
+                adler = ParallelDeflater.combineAdler32(adler, band.adler, band.length);
+                PngStreamWriter.writeChunk(out, PngStreamWriter.IDAT, band.data.buffer(), 0, band.data.size(), crc);
+            }
+        } finally {
+            for (final ForkJoinTask<ParallelDeflater.Chunk> task : inFlight) {
+                task.cancel(false);
+            }
+        }
+
+        final byte[] trailer = new byte[4];
+        PngStreamWriter.putInt(trailer, 0, (int) adler);
+        PngStreamWriter.writeChunk(out, PngStreamWriter.IDAT, trailer, 0, trailer.length, crc);
+        PngStreamWriter.writeChunk(out, PngStreamWriter.IEND, trailer, 0, 0, crc);
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Filter {@code rows} rows starting at {@code y} into {@code out} at {@code offset}.
+     */
+    private static void filterRows(final RowSource source, final int width, final int y, final int rows, final boolean grayscale, final byte[] out, final int offset) {
+        final int rowLength = PngStreamWriter.rowLength(width, grayscale);
+        final int[] argb = new int[width * rows];
+        source.getRows(argb, y, rows);
+
+        for (int r = 0; r < rows; r++) {
+            PngStreamWriter.filterRow(argb, r * width, width, grayscale, out, offset + r * rowLength);
+        }
+    }
+
+    private final class BandTask implements Callable<ParallelDeflater.Chunk> {
+        private final RowSource source;
+        private final int width;
+        private final int y;
+        private final int rows;
+        private final boolean grayscale;
+        private final boolean last;
+
+        private BandTask(final RowSource source, final int width, final int y, final int rows, final boolean grayscale, final boolean last) {
+            this.source = source;
+            this.width = width;
+            this.y = y;
+            this.rows = rows;
+            this.grayscale = grayscale;
+            this.last = last;
+        }
+
+        @Override
+        public ParallelDeflater.Chunk call() throws IOException {
+            final int rowLength = PngStreamWriter.rowLength(width, grayscale);
+            // filtering the end of the previous band again is cheaper than waiting for it
+            final int dictionaryRows = Math.min(y, (ParallelDeflater.WINDOW_SIZE + rowLength - 1) / rowLength);
+            final int dictionaryLength = dictionaryRows * rowLength;
+            final int length = rows * rowLength;
+
+            final byte[] filtered = new byte[dictionaryLength + length];
+            if (dictionaryRows > 0) {
+                filterRows(source, width, y - dictionaryRows, dictionaryRows, grayscale, filtered, 0);
+            }
+            filterRows(source, width, y, rows, grayscale, filtered, dictionaryLength);
+
+            final Adler32 adler = new Adler32();
+            adler.update(filtered, dictionaryLength, length);
+
+            final ParallelDeflater.ChunkOutputStream data = new ParallelDeflater.ChunkOutputStream(length / 4 + 64);
+            final Deflater deflater = deflaters.obtain(level, Deflater.DEFAULT_STRATEGY, true);
+            try {
+                ParallelDeflater.deflateChunk(deflater, filtered, 0, dictionaryLength, length, last, data);
+            } finally {
+                deflaters.release(deflater);
+            }
+
+            return new ParallelDeflater.Chunk(data, adler.getValue(), length);
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Source of the image pixels, must support concurrent reads.
+     */
+    public interface RowSource {
+        /**
+         * Copy {@code rows} rows starting at {@code y} as non premultiplied ARGB ints.
+         */
+        void getRows(int[] argb, int y, int rows);
+    }
+    //endregion
+}
@@ -0,0 +1,234 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Row oriented PNG encoder. Rows are filtered, compressed and written as soon as they are
+ * received, so an image of any height can be encoded while only a few rows are held in memory.
+ * Pixels are non premultiplied ARGB ints as returned by {@code Bitmap.getPixels}. Grayscale images
+ * keep the luma of the pixels only, without alpha.
+ */
+public class PngStreamWriter {
+    //region Constants
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_GRAY = 0;
+    private static final int COLOR_TYPE_RGBA = 6;
+    private static final int FILTER_SUB = 1;
+    /**
+     * Size of the IDAT chunks.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+    //endregion
+
+    //region Class members
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final boolean grayscale;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] row;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkLength;
+    private int rowsWritten;
+    private boolean finished;
+    //endregion
+
+    //region Constructors
+    public PngStreamWriter(final OutputStream out, final int width, final int height) throws IOException {
+        this(out, width, height, Deflater.DEFAULT_COMPRESSION, false);
+    }
+
+    /**
+     * Write the PNG header, the image rows are expected next.
+     *
+     * @param level     zlib compression level
+     * @param grayscale write 8 bit luma instead of RGBA
+     */
+    public PngStreamWriter(final OutputStream out, final int width, final int height, final int level, final boolean grayscale) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.grayscale = grayscale;
+        this.deflater = new Deflater(level);
+        this.row = new byte[rowLength(width, grayscale)];
+
+        writeHeader(out, width, height, grayscale, crc);
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Encode the next {@code rows} rows of the image.
+     *
+     * @param argb   pixels
+     * @param offset index of the first pixel of the first row
+     * @param stride amount of pixels between rows
+     */
+    public void writeRows(final int[] argb, final int offset, final int stride, final int rows) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("PNG stream is already finished");
+        }
+        if (rowsWritten + rows > height) {
+            throw new IllegalArgumentException("Too many rows: " + (rowsWritten + rows) + " > " + height);
+        }
+
+        for (int r = 0; r < rows; r++) {
+            filterRow(argb, offset + r * stride, width, grayscale, row, 0);
+            deflater.setInput(row, 0, row.length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        rowsWritten += rows;
+    }
+
+    /**
+     * Flush the compressed data and write the PNG trailer. The output stream is not closed.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (rowsWritten != height) {
+            throw new IllegalStateException("Missing rows: " + rowsWritten + " of " + height + " written");
+        }
+
+        finished = true;
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            flushChunk();
+            writeChunk(out, IEND, chunk, 0, 0, crc);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Release the compressor without finishing the image, e.g. after a failure.
+     */
+    public void abort() {
+        if (finished) return;
+
+        finished = true;
+        deflater.end();
+    }
+
+    /**
+     * Rec. 709 luma of an ARGB pixel, the weights of {@code ColorMatrix.setSaturation(0)}.
+     */
+    public static int luma(final int pixel) {
+        return (54 * ((pixel >> 16) & 0xFF) + 183 * ((pixel >> 8) & 0xFF) + 19 * (pixel & 0xFF)) >> 8;
+    }
+    //endregion
+
+    //region Implementation
+    /**
+     * Size of a filtered row, including the filter type byte.
+     */
+    static int rowLength(final int width, final boolean grayscale) {
+        return 1 + width * (grayscale ? 1 : 4);
+    }
+
+    /**
+     * Write the PNG signature and the IHDR chunk of an 8 bit RGBA or grayscale image.
+     */
+    static void writeHeader(final OutputStream out, final int width, final int height, final boolean grayscale, final CRC32 crc) throws IOException {
+        out.write(SIGNATURE);
+
+        final byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = BIT_DEPTH;
+        ihdr[9] = (byte) (grayscale ? COLOR_TYPE_GRAY : COLOR_TYPE_RGBA);
+        // compression, filter and interlace methods are all 0
+        writeChunk(out, IHDR, ihdr, 0, ihdr.length, crc);
+    }
+
+    /**
+     * Convert a row to RGBA or luma bytes with the Sub filter, cheap and effective on flat UI
+     * content.
+     */
+    static void filterRow(final int[] argb, final int offset, final int width, final boolean grayscale, final byte[] out, int o) {
+        out[o++] = FILTER_SUB;
+
+        if (grayscale) {
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                final int luma = luma(argb[offset + x]);
+                out[o++] = (byte) (luma - previous);
+                previous = luma;
+            }
+            return;
+        }
+
+        int pr = 0, pg = 0, pb = 0, pa = 0;
+        for (int x = 0; x < width; x++) {
+            final int pixel = argb[offset + x];
+            final int a = pixel >>> 24;
+            final int r = (pixel >> 16) & 0xFF;
+            final int g = (pixel >> 8) & 0xFF;
+            final int b = pixel & 0xFF;
+
+            out[o] = (byte) (r - pr);
+            out[o + 1] = (byte) (g - pg);
+            out[o + 2] = (byte) (b - pb);
+            out[o + 3] = (byte) (a - pa);
+            o += 4;
+
+            pr = r;
+            pg = g;
+            pb = b;
+            pa = a;
+        }
+    }
+
+    static void writeChunk(final OutputStream out, final byte[] type, final byte[] data, final int offset, final int length, final CRC32 crc) throws IOException {
+        final byte[] header = new byte[8];
+        putInt(header, 0, length);
+        System.arraycopy(type, 0, header, 4, 4);
+        out.write(header, 0, 8);
+        out.write(data, offset, length);
+
+        crc.reset();
+        crc.update(type, 0, 4);
+        crc.update(data, offset, length);
+        putInt(header, 0, (int) crc.getValue());
+        out.write(header, 0, 4);
+    }
+
+    private void deflate() throws IOException {
+        chunkLength += deflater.deflate(chunk, chunkLength, CHUNK_SIZE - chunkLength);
+        if (chunkLength == CHUNK_SIZE) {
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkLength == 0) return;
+
+        writeChunk(out, IDAT, chunk, 0, chunkLength, crc);
+        chunkLength = 0;
+    }
+
+    static void putInt(final byte[] b, final int i, final int value) {
+        b[i] = (byte) (value >>> 24);
+        b[i + 1] = (byte) (value >>> 16);
+        b[i + 2] = (byte) (value >>> 8);
+        b[i + 3] = (byte) value;
+    }
+    //endregion
+}
@@ -0,0 +1,141 @@
+package fr.greweb.reactnativeviewshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Output of RAW captures saved to a file. The file is sized up front for the {@code w:h|} header
+ * and the pixels, then memory mapped so pixels are copied straight into the page cache without
+ * any heap copy. Bytes written through the stream API (compression fallback) go to the file as is.
+ */
+public class RawFileOutputStream extends OutputStream {
+    //region Constants
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    /**
+     * Mapped bytes are hashed through a chunk of that size.
+     */
+    private static final int HASH_CHUNK = 64 * 1024;
+    //endregion
+
+    //region Class members
+    private final File file;
+    private RandomAccessFile raf;
+    private MappedByteBuffer mapped;
+    private final XXHash64 hash = new XXHash64();
+    private final byte[] single = new byte[1];
+    //endregion
+
+    //region Constructors
+    public RawFileOutputStream(final File file) {
+        this.file = file;
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Size the file for a {@code width} x {@code height} image of {@code bytesPerPixel}, write
+     * the resolution header and map the pixels area.
+     *
+     * @param pixelFormat appended to the header, null for ARGB pixels
+     * @return buffer positioned at the first pixel with exactly the room for all pixels
+     */
+    public ByteBuffer mapPixels(final int width, final int height, final int bytesPerPixel, final String pixelFormat) throws IOException {
+        if (raf != null) {
+            throw new IllegalStateException("Output file is already in use");
+        }
+
+        final byte[] header = header(width, height, pixelFormat).getBytes(US_ASCII);
+        final long pixelBytes = (long) width * height * bytesPerPixel;
+        if (pixelBytes > Integer.MAX_VALUE) {
+            throw new IOException("Image too big to be mapped: " + width + "x" + height);
+        }
+
+        final long total = header.length + pixelBytes;
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(total);
+        mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, total);
+        mapped.put(header);
+
+        return mapped.slice();
+    }
+
+    /**
+     * Header framing RAW pixels, {@code w:h|} or {@code w:h:format|}.
+     *
+     * @param pixelFormat null for ARGB pixels
+     */
+    public static String header(final int width, final int height, final String pixelFormat) {
+        return pixelFormat == null
+                ? width + ":" + height + "|"
+                : width + ":" + height + ":" + pixelFormat + "|";
+    }
+
+    /**
+     * XXH64 of the file content, valid once closed. Mapped pixels are hashed from the page
+     * cache on close, the file is never read back.
+     */
+    public long getHash() {
+        return hash.digest();
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        open().write(b);
+        single[0] = (byte) b;
+        hash.update(single, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        open().write(b, off, len);
+        hash.update(b, off, len);
+    }
+
+    /**
+     * Close the file. Mapped pages are written back by the kernel, no explicit sync is done as
+     * the file is only read back on the same device.
+     */
+    @Override
+    public void close() throws IOException {
+        if (mapped != null) {
+            final ByteBuffer content = mapped.duplicate();
+            content.clear();
+            final byte[] chunk = new byte[Math.min(HASH_CHUNK, content.remaining())];
+            while (content.hasRemaining()) {
+                final int n = Math.min(chunk.length, content.remaining());
+                content.get(chunk, 0, n);
+                hash.update(chunk, 0, n);
+            }
+        }
+        mapped = null;
+
+        if (raf != null) {
+            raf.close();
+        } else {
+            // nothing captured, still leave an empty file behind like a plain stream would
+            new RandomAccessFile(file, "rw").close();
+        }
+    }
+    //endregion
+
+    //region Implementation
+    private RandomAccessFile open() throws IOException {
+        if (mapped != null) {
+            throw new IllegalStateException("Output file is mapped");
+        }
+
+        if (raf == null) {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+        }
+
+        return raf;
+    }
+    //endregion
+}
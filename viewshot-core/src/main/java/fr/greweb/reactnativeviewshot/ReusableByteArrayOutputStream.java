@@ -0,0 +1,67 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stream that can re-use pre-allocated buffer, usually leased from {@link BufferPool}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    public ReusableByteArrayOutputStream(@NonNull final byte[] buffer) {
+        super(0);
+
+        this.buf = buffer;
+    }
+
+    /**
+     * Get access to inner buffer without any memory copy operations.
+     */
+    public byte[] innerBuffer() {
+        return this.buf;
+    }
+
+    @NonNull
+    public ByteBuffer asBuffer(final int size) {
+        if (this.buf.length < size) {
+            grow(size);
+        }
+
+        return ByteBuffer.wrap(this.buf);
+    }
+
+    public void setSize(final int size) {
+        this.count = size;
+    }
+
+    /**
+     * Increases the capacity to ensure that it can hold at least the
+     * number of elements specified by the minimum capacity argument.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    protected void grow(int minCapacity) {
+        // overflow-conscious code
+        int oldCapacity = buf.length;
+        int newCapacity = oldCapacity << 1;
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        buf = Arrays.copyOf(buf, newCapacity);
+    }
+
+    protected static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) // overflow
+            throw new OutOfMemoryError();
+
+        return (minCapacity > MAX_ARRAY_SIZE) ?
+                Integer.MAX_VALUE :
+                MAX_ARRAY_SIZE;
+    }
+}
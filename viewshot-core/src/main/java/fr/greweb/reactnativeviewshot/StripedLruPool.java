@@ -0,0 +1,273 @@
+package fr.greweb.reactnativeviewshot;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Bookkeeping of a pool of idle objects keyed by their shape. The pool is split into lock stripes
+ * so parallel captures do not contend on a single lock, idle objects are evicted in least
+ * recently released order once they exceed the byte budget, and the smallest idle object of a
+ * size range can be taken to be reshaped by the caller.
+ * <p>
+ * Objects are told apart by {@link Object#equals(Object)}, pooled types are expected to use
+ * identity like bitmaps and arrays do.
+ *
+ * @param <K> shape of the pooled objects
+ * @param <V> pooled objects
+ */
+public class StripedLruPool<K, V> {
+    //region Constants
+    /**
+     * Amount of lock stripes, must be a power of two.
+     */
+    private static final int STRIPES = 4;
+    //endregion
+
+    //region Class members
+    private final Stripe<K, V>[] stripes;
+    private final long byteBudget;
+    private final Evictor<V> evictor;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    //endregion
+
+    //region Constructors
+    /**
+     * @param byteBudget maximum amount of bytes retained by idle objects
+     * @param evictor    releases the objects leaving the pool without being taken
+     */
+    public StripedLruPool(final long byteBudget, @NonNull final Evictor<V> evictor) {
+        this.byteBudget = byteBudget;
+        this.evictor = evictor;
+        this.stripes = newStripes();
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Take the most recently released idle object of the key.
+     */
+    @Nullable
+    public V take(@NonNull final K key) {
+        final Entry<K, V> entry = stripeFor(key).take(key);
+        if (entry == null) return null;
+
+        retainedBytes.addAndGet(-entry.bytes);
+        return entry.value;
+    }
+
+    /**
+     * Take the smallest idle object of any key holding between {@code minBytes} and
+     * {@code maxBytes}.
+     */
+    @Nullable
+    public V takeBestFit(final long minBytes, final long maxBytes) {
+        Stripe<K, V> bestStripe = null;
+        Entry<K, V> best = null;
+        for (final Stripe<K, V> stripe : stripes) {
+            final Entry<K, V> candidate = stripe.peekBestFit(minBytes, maxBytes);
+            if (candidate != null && (best == null || candidate.bytes < best.bytes)) {
+                best = candidate;
+                bestStripe = stripe;
+            }
+        }
+
+        if (best == null || !bestStripe.remove(best)) return null;
+        retainedBytes.addAndGet(-best.bytes);
+        return best.value;
+    }
+
+    /**
+     * Add an idle object, then evict the least recently released ones over the budget. Objects
+     * bigger than the whole budget should not be offered.
+     *
+     * @return false when the object is already in the pool
+     */
+    public boolean offer(@NonNull final K key, @NonNull final V value, final int bytes) {
+        if (!stripeFor(key).offer(new Entry<>(key, value, bytes, clock.incrementAndGet()))) return false;
+
+        retainedBytes.addAndGet(bytes);
+        trimToBudget();
+        return true;
+    }
+
+    /**
+     * Evict all idle objects.
+     */
+    public void clear() {
+        for (final Stripe<K, V> stripe : stripes) {
+            Entry<K, V> entry;
+            while ((entry = stripe.pollEldest()) != null) {
+                retainedBytes.addAndGet(-entry.bytes);
+                evictor.evict(entry.value);
+            }
+        }
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Idle objects evicted to meet the budget.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+    //endregion
+
+    //region Implementation
+    @SuppressWarnings("unchecked")
+    private static <K, V> Stripe<K, V>[] newStripes() {
+        return (Stripe<K, V>[]) new Stripe<?, ?>[STRIPES];
+    }
+
+    private Stripe<K, V> stripeFor(@NonNull final K key) {
+        return stripes[(key.hashCode() & 0x7fffffff) & (STRIPES - 1)];
+    }
+
+    /**
+     * Evict least recently released objects of all stripes until the budget is met.
+     */
+    private void trimToBudget() {
+        while (retainedBytes.get() > byteBudget) {
+            Stripe<K, V> eldestStripe = null;
+            long eldestTick = Long.MAX_VALUE;
+            for (final Stripe<K, V> stripe : stripes) {
+                final long tick = stripe.eldestTick();
+                if (tick < eldestTick) {
+                    eldestTick = tick;
+                    eldestStripe = stripe;
+                }
+            }
+
+            final Entry<K, V> entry = eldestStripe != null ? eldestStripe.pollEldest() : null;
+            if (entry == null) return;
+
+            retainedBytes.addAndGet(-entry.bytes);
+            evictions.incrementAndGet();
+            evictor.evict(entry.value);
+        }
+    }
+    //endregion
+
+    //region Nested declarations
+    /**
+     * Releases objects evicted from the pool, called outside of the pool locks.
+     */
+    public interface Evictor<V> {
+        void evict(@NonNull V value);
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final int bytes;
+        private final long tick;
+
+        private Entry(final K key, final V value, final int bytes, final long tick) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+            this.tick = tick;
+        }
+    }
+
+    /**
+     * Idle objects of a subset of keys, guarded by their own lock.
+     */
+    private static final class Stripe<K, V> {
+        /**
+         * Idle objects in release order, eldest first.
+         */
+        private final LinkedHashMap<V, Entry<K, V>> lru = new LinkedHashMap<>();
+        private final Map<K, ArrayDeque<Entry<K, V>>> byKey = new HashMap<>();
+
+        @Nullable
+        private synchronized Entry<K, V> take(@NonNull final K key) {
+            final ArrayDeque<Entry<K, V>> entries = byKey.get(key);
+            final Entry<K, V> entry = entries != null ? entries.pollLast() : null;
+            if (entry == null) return null;
+
+            if (entries.isEmpty()) {
+                byKey.remove(key);
+            }
+            lru.remove(entry.value);
+            return entry;
+        }
+
+        /**
+         * @return false when the object is already in the pool
+         */
+        private synchronized boolean offer(@NonNull final Entry<K, V> entry) {
+            if (lru.containsKey(entry.value)) return false;
+
+            lru.put(entry.value, entry);
+
+            ArrayDeque<Entry<K, V>> entries = byKey.get(entry.key);
+            if (entries == null) {
+                entries = new ArrayDeque<>();
+                byKey.put(entry.key, entries);
+            }
+            entries.addLast(entry);
+            return true;
+        }
+
+        private synchronized long eldestTick() {
+            final Iterator<Entry<K, V>> it = lru.values().iterator();
+            return it.hasNext() ? it.next().tick : Long.MAX_VALUE;
+        }
+
+        @Nullable
+        private synchronized Entry<K, V> pollEldest() {
+            final Iterator<Entry<K, V>> it = lru.values().iterator();
+            if (!it.hasNext()) return null;
+
+            final Entry<K, V> entry = it.next();
+            remove(entry);
+            return entry;
+        }
+
+        @Nullable
+        private synchronized Entry<K, V> peekBestFit(final long minBytes, final long maxBytes) {
+            Entry<K, V> best = null;
+            for (final Entry<K, V> entry : lru.values()) {
+                if (entry.bytes >= minBytes && entry.bytes <= maxBytes && (best == null || entry.bytes < best.bytes)) {
+                    best = entry;
+                }
+            }
+            return best;
+        }
+
+        private synchronized boolean remove(@NonNull final Entry<K, V> entry) {
+            if (lru.remove(entry.value) == null) return false;
+
+            final ArrayDeque<Entry<K, V>> entries = byKey.get(entry.key);
+            if (entries != null) {
+                entries.remove(entry);
+                if (entries.isEmpty()) {
+                    byKey.remove(entry.key);
+                }
+            }
+            return true;
+        }
+    }
+    //endregion
+}
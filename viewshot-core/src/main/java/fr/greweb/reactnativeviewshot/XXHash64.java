@@ -0,0 +1,204 @@
+package fr.greweb.reactnativeviewshot;
+
+/**
+ * Streaming XXH64 hash. Fast non cryptographic hash used to detect unchanged frames without
+ * keeping the previous frame pixels around. Ints are hashed as their little endian bytes, so
+ * hashing ARGB pixels gives the same result as hashing the {@code copyPixelsToBuffer} output on
+ * little endian devices.
+ */
+public final class XXHash64 {
+    //region Constants
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+    //endregion
+
+    //region Class members
+    private final long seed;
+    private final byte[] buffer = new byte[STRIPE];
+    private int buffered;
+    private long total;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    //endregion
+
+    //region Constructors
+    public XXHash64() {
+        this(0);
+    }
+
+    public XXHash64(final long seed) {
+        this.seed = seed;
+        reset();
+    }
+    //endregion
+
+    //region Public API
+    /**
+     * Start a new hash with the same seed.
+     */
+    public XXHash64 reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        buffered = 0;
+        total = 0;
+        return this;
+    }
+
+    public XXHash64 update(final byte[] data, int off, int len) {
+        total += len;
+
+        if (buffered > 0) {
+            final int n = Math.min(len, STRIPE - buffered);
+            System.arraycopy(data, off, buffer, buffered, n);
+            buffered += n;
+            off += n;
+            len -= n;
+
+            if (buffered < STRIPE) return this;
+            stripe(readLong(buffer, 0), readLong(buffer, 8), readLong(buffer, 16), readLong(buffer, 24));
+            buffered = 0;
+        }
+
+        while (len >= STRIPE) {
+            stripe(readLong(data, off), readLong(data, off + 8), readLong(data, off + 16), readLong(data, off + 24));
+            off += STRIPE;
+            len -= STRIPE;
+        }
+
+        System.arraycopy(data, off, buffer, 0, len);
+        buffered = len;
+        return this;
+    }
+
+    /**
+     * Hash ints as their little endian bytes.
+     */
+    public XXHash64 update(final int[] data, int off, int len) {
+        // complete a pending stripe byte by byte
+        while (len > 0 && buffered > 0) {
+            putInt(data[off++]);
+            len--;
+        }
+
+        final int ints = STRIPE / 4;
+        while (len >= ints) {
+            stripe(
+                    (data[off] & 0xFFFFFFFFL) | ((long) data[off + 1] << 32),
+                    (data[off + 2] & 0xFFFFFFFFL) | ((long) data[off + 3] << 32),
+                    (data[off + 4] & 0xFFFFFFFFL) | ((long) data[off + 5] << 32),
+                    (data[off + 6] & 0xFFFFFFFFL) | ((long) data[off + 7] << 32));
+            total += STRIPE;
+            off += ints;
+            len -= ints;
+        }
+
+        while (len > 0) {
+            putInt(data[off++]);
+            len--;
+        }
+        return this;
+    }
+
+    /**
+     * Hash of everything written since the last reset, the state is left unchanged.
+     */
+    public long digest() {
+        long h;
+        if (total >= STRIPE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += total;
+
+        int i = 0;
+        for (; i + 8 <= buffered; i += 8) {
+            h ^= round(0, readLong(buffer, i));
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= buffered) {
+            h ^= (readInt(buffer, i) & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < buffered; i++) {
+            h ^= (buffer[i] & 0xFFL) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    public static long hash(final byte[] data, final int off, final int len) {
+        return new XXHash64().update(data, off, len).digest();
+    }
+    //endregion
+
+    //region Implementation
+    private void stripe(final long l1, final long l2, final long l3, final long l4) {
+        v1 = round(v1, l1);
+        v2 = round(v2, l2);
+        v3 = round(v3, l3);
+        v4 = round(v4, l4);
+    }
+
+    private void putInt(final int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            buffer[buffered++] = (byte) (value >>> shift);
+            total++;
+
+            if (buffered == STRIPE) {
+                stripe(readLong(buffer, 0), readLong(buffer, 8), readLong(buffer, 16), readLong(buffer, 24));
+                buffered = 0;
+            }
+        }
+    }
+
+    private static long round(long acc, final long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long h, final long v) {
+        h ^= round(0, v);
+        return h * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(final byte[] b, final int i) {
+        return (b[i] & 0xFFL)
+                | (b[i + 1] & 0xFFL) << 8
+                | (b[i + 2] & 0xFFL) << 16
+                | (b[i + 3] & 0xFFL) << 24
+                | (b[i + 4] & 0xFFL) << 32
+                | (b[i + 5] & 0xFFL) << 40
+                | (b[i + 6] & 0xFFL) << 48
+                | (b[i + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(final byte[] b, final int i) {
+        return (b[i] & 0xFF)
+                | (b[i + 1] & 0xFF) << 8
+                | (b[i + 2] & 0xFF) << 16
+                | (b[i + 3] & 0xFF) << 24;
+    }
+    //endregion
+}
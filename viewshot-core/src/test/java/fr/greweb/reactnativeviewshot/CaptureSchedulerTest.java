@@ -0,0 +1,103 @@
+package fr.greweb.reactnativeviewshot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Slot accounting of detached captures, whatever the moment they are resumed or released.
+ */
+public class CaptureSchedulerTest {
+    private static final long TIMEOUT_S = 5;
+
+    private CaptureScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new CaptureScheduler(2, 4);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void resumeBeforeTaskReturnsReleasesSlotOnce() throws Exception {
+        final CountDownLatch continued = new CountDownLatch(1);
+        scheduler.execute(CaptureScheduler.Priority.USER_INITIATED, new Runnable() {
+            @Override
+            public void run() {
+                // e.g. PixelCopy.request throwing, the callback runs inline
+                scheduler.detach().resume(new Runnable() {
+                    @Override
+                    public void run() {
+                        continued.countDown();
+                    }
+                });
+            }
+        });
+
+        assertTrue(continued.await(TIMEOUT_S, TimeUnit.SECONDS));
+        awaitIdle();
+    }
+
+    @Test
+    public void releaseBeforeTaskReturnsReleasesSlotOnce() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        scheduler.execute(CaptureScheduler.Priority.USER_INITIATED, new Runnable() {
+            @Override
+            public void run() {
+                scheduler.detach().release();
+                ran.countDown();
+            }
+        });
+
+        assertTrue(ran.await(TIMEOUT_S, TimeUnit.SECONDS));
+        awaitIdle();
+    }
+
+    @Test
+    public void resumeFromAnotherThreadReleasesSlotOnce() throws Exception {
+        final CaptureScheduler.Slot[] slot = new CaptureScheduler.Slot[1];
+        final CountDownLatch detached = new CountDownLatch(1);
+        final CountDownLatch continued = new CountDownLatch(1);
+        scheduler.execute(CaptureScheduler.Priority.USER_INITIATED, new Runnable() {
+            @Override
+            public void run() {
+                slot[0] = scheduler.detach();
+                detached.countDown();
+            }
+        });
+
+        assertTrue(detached.await(TIMEOUT_S, TimeUnit.SECONDS));
+        slot[0].resume(new Runnable() {
+            @Override
+            public void run() {
+                continued.countDown();
+            }
+        });
+
+        assertTrue(continued.await(TIMEOUT_S, TimeUnit.SECONDS));
+        awaitIdle();
+    }
+
+    /**
+     * Workers free the slot right after the task returns, wait for it.
+     */
+    private void awaitIdle() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_S);
+        while (scheduler.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // a second release would make it negative, wait a bit more to catch it
+        Thread.sleep(50);
+        assertEquals(0, scheduler.getActiveCount());
+    }
+}